@@ -6,20 +6,28 @@ import calendario.SocialCalendarApp;
 import java.awt.*;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Controller {
     private List<User> users = new ArrayList<>();
     private List<Admin> admins = new ArrayList<>();
+    // Indices by username so login lookups don't scan the lists
+    private Map<String, User> userIndex = new HashMap<>();
+    private Map<String, Admin> adminIndex = new HashMap<>();
     private SocialCalendarApp socialCalendarApp;
 
-    private static final String DATA_FILE = "data\\userdata.ser";
+    private static final String DATA_FILE = "data\\userdata.bin";
+    private static final String LEGACY_DATA_FILE = "data\\userdata.ser";  // old serialized format, read once to migrate
+    private static final int MAX_LOGIN_ATTEMPTS = 5;  // failed attempts allowed per login dialog
 
     public Controller() {
         loadData();
         if (admins.isEmpty()) {
             admins.add(new Admin("admin", "admin123")); // default admin if none loaded
         }
+        rebuildIndexes();
     }
 
     public void start() {
@@ -69,12 +77,7 @@ public class Controller {
     }
 
     private Admin findAdmin(String username) {
-        for (Admin a : admins) {
-            if (a.getUsername().equals(username)) {
-                return a;
-            }
-        }
-        return null;
+        return adminIndex.get(username);
     }
 
     private void adminMenu(Admin admin) {
@@ -98,6 +101,7 @@ public class Controller {
                 case 0: // Create new user
                     User newUser = admin.createNewUser();
                     users.add(newUser);
+                    userIndex.putIfAbsent(newUser.getUsername(), newUser);
                     JOptionPane.showMessageDialog(null,
                             "New user created!\nUsername: " + newUser.getUsername() +
                             "\nPassword: " + newUser.getPassword());
@@ -157,6 +161,7 @@ public class Controller {
         if (confirm == JOptionPane.YES_OPTION) {
             // Eliminar usuario de la lista
             users.removeIf(u -> u.getUsername().equals(userToRemove));
+            userIndex.remove(userToRemove);
             saveData();
             
             // Eliminar eventos y publicaciones del usuario
@@ -171,7 +176,7 @@ public class Controller {
     // Método auxiliar para eliminar todos los datos del usuario
     private void eliminarDatosUsuario(String username) {
         // Eliminar publicaciones del muro
-        SocialCalendarApp.muro.removeIf(publicacion -> publicacion.getUsuario().equals(username));
+        SocialCalendarApp.getMuro().removeByUser(username);
         SocialCalendarApp.saveMuro();
         
         // Eliminar archivo de eventos del usuario
@@ -196,6 +201,7 @@ public class Controller {
         Admin newAdmin = new Admin(username, provisionalPassword);
         newAdmin.setPasswordResetPending(true); // Force password change on first login
         admins.add(newAdmin);
+        adminIndex.putIfAbsent(username, newAdmin);
         saveData();
 
         JOptionPane.showMessageDialog(null,
@@ -238,7 +244,8 @@ public class Controller {
 
 
     private User validateUserLogin(String accountType) {
-        while (true) {
+        int failedAttempts = 0;
+        while (failedAttempts < MAX_LOGIN_ATTEMPTS) {
             JPanel panel = new JPanel(new GridLayout(2, 2));
             JLabel userLabel = new JLabel("Username:");
             JTextField userField = new JTextField();
@@ -271,10 +278,14 @@ public class Controller {
             }
             if (user != null && user.authenticate(password)) {
                 return user; // Successful login
-            } else {
+            }
+            failedAttempts++;
+            if (failedAttempts < MAX_LOGIN_ATTEMPTS) {
                 JOptionPane.showMessageDialog(null, "Invalid username or password. Please try again.");
             }
         }
+        JOptionPane.showMessageDialog(null, "Too many failed login attempts. Please try again later.");
+        return null;
     }
 
     private boolean promptPasswordChange(User user) {
@@ -313,20 +324,25 @@ public class Controller {
 
 
     private User findUser(String username) {
+        return userIndex.get(username);
+    }
+
+    // Rebuilds the username indices from the loaded lists (first account wins on duplicates)
+    private void rebuildIndexes() {
+        userIndex = new HashMap<>();
         for (User u : users) {
-            if (u.getUsername().equals(username)) {
-                return u;
-            }
+            userIndex.putIfAbsent(u.getUsername(), u);
+        }
+        adminIndex = new HashMap<>();
+        for (Admin a : admins) {
+            adminIndex.putIfAbsent(a.getUsername(), a);
         }
-        return null;
     }
 
     // Serialization: Save users, admins, and userCounter to file
     private void saveData() {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(DATA_FILE))) {
-            out.writeObject(users);
-            out.writeObject(admins);
-            out.writeInt(Admin.getUserCounter());  // save static counter
+        try (OutputStream out = new FileOutputStream(DATA_FILE)) {
+            UserRecordCodec.write(users, admins, Admin.getUserCounter(), out);  // counter is the static one
         } catch (IOException e) {
             JOptionPane.showMessageDialog(null, "Error saving data: " + e.getMessage());
         }
@@ -336,6 +352,20 @@ public class Controller {
     @SuppressWarnings("unchecked")
     private void loadData() {
         File file = new File(DATA_FILE);
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                UserRecordCodec.Data data = UserRecordCodec.read(in);
+                users = data.users;
+                admins = data.admins;
+                Admin.setUserCounter(data.userCounter);
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(null, "Error loading data: " + e.getMessage());
+            }
+            return;
+        }
+
+        // No binary file yet: migrate from the old serialized file (next save writes the binary one)
+        file = new File(LEGACY_DATA_FILE);
         if (!file.exists()) return;
 
         try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
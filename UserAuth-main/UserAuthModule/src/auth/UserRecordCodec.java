@@ -0,0 +1,147 @@
+package auth;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact, versioned binary format for user and admin records.
+ * Unlike ObjectOutputStream it does not depend on class names, so this module (auth.User)
+ * and proyecto-calendario (default-package User) share the layout. They do not share the
+ * meaning of the password field: it is plaintext here and a PBKDF2 hash in proyecto-calendario.
+ * proyecto-calendario sets bit 2 on hashed records and this module refuses files that contain
+ * them, instead of treating a hash as the password. proyecto-calendario reads plaintext files
+ * and hashes each password on its next login.
+ *
+ * Layout (big-endian):
+ *   header  int magic "UAUR", byte version, int user counter, int record count
+ *   record  byte flags (bit 0 admin, bit 1 password reset pending, bit 2 hashed password),
+ *           short + UTF-8 bytes of the username, short + UTF-8 bytes of the password
+ *   trailer int CRC32 of everything before it
+ */
+final class UserRecordCodec {
+    static final int MAGIC = 0x55415552;
+    static final byte VERSION = 1;
+
+    static final int FLAG_ADMIN = 1;
+    static final int FLAG_PASSWORD_RESET_PENDING = 1 << 1;
+    static final int FLAG_PASSWORD_HASHED = 1 << 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private UserRecordCodec() {
+    }
+
+    // Decoded contents of a user data file
+    static final class Data {
+        final List<User> users;
+        final List<Admin> admins;
+        final int userCounter;
+
+        Data(List<User> users, List<Admin> admins, int userCounter) {
+            this.users = users;
+            this.admins = admins;
+            this.userCounter = userCounter;
+        }
+    }
+
+    // Writes users, admins and the counter; the stream is flushed but not closed
+    static void write(List<User> users, List<Admin> admins, int userCounter, OutputStream out) throws IOException {
+        CRC32 crc = new CRC32();
+        DataOutputStream dataOut = new DataOutputStream(
+                new CheckedOutputStream(new BufferedOutputStream(out, BUFFER_SIZE), crc));
+
+        dataOut.writeInt(MAGIC);
+        dataOut.writeByte(VERSION);
+        dataOut.writeInt(userCounter);
+        dataOut.writeInt(users.size() + admins.size());
+        for (User user : users) {
+            writeRecord(dataOut, user, false);
+        }
+        for (Admin admin : admins) {
+            writeRecord(dataOut, admin, true);
+        }
+
+        dataOut.flush();
+        int checksum = (int) crc.getValue();
+        dataOut.writeInt(checksum);
+        dataOut.flush();
+    }
+
+    // Reads a file written by write; fails on foreign, newer, hashed or corrupted data
+    static Data read(InputStream in) throws IOException {
+        CRC32 crc = new CRC32();
+        DataInputStream dataIn = new DataInputStream(
+                new CheckedInputStream(new BufferedInputStream(in, BUFFER_SIZE), crc));
+
+        if (dataIn.readInt() != MAGIC) {
+            throw new IOException("Not a user data file");
+        }
+        int version = dataIn.readUnsignedByte();
+        if (version > VERSION) {
+            throw new IOException("Unsupported user data version " + version);
+        }
+        int userCounter = dataIn.readInt();
+        int count = dataIn.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupt user data: negative record count");
+        }
+
+        List<User> users = new ArrayList<>(count);
+        List<Admin> admins = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int flags = dataIn.readUnsignedByte();
+            if ((flags & FLAG_PASSWORD_HASHED) != 0) {
+                throw new IOException("User data holds hashed passwords written by proyecto-calendario");
+            }
+            String username = readString(dataIn);
+            String password = readString(dataIn);
+            User account = (flags & FLAG_ADMIN) != 0 ? new Admin(username, password) : new User(username, password);
+            account.setPasswordResetPending((flags & FLAG_PASSWORD_RESET_PENDING) != 0);
+            if (account instanceof Admin) {
+                admins.add((Admin) account);
+            } else {
+                users.add(account);
+            }
+        }
+
+        int expected = (int) crc.getValue();
+        if (dataIn.readInt() != expected) {
+            throw new IOException("Corrupt user data: checksum mismatch");
+        }
+        return new Data(users, admins, userCounter);
+    }
+
+    private static void writeRecord(DataOutputStream out, User account, boolean admin) throws IOException {
+        int flags = (admin ? FLAG_ADMIN : 0)
+                | (account.isPasswordResetPending() ? FLAG_PASSWORD_RESET_PENDING : 0);
+        out.writeByte(flags);
+        writeString(out, account.getUsername());
+        writeString(out, account.getPassword());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Field too long: " + bytes.length + " bytes");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,323 @@
+package calendario;
+
+import calendario.SocialCalendarApp.PublicacionMuro;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Muro social compartido por todas las sesiones del proceso
+// Las publicaciones forman un árbol AVL inmutable ordenado por fecha, hora y orden de llegada.
+// Publicar copia solo el camino desde la raíz hasta la nueva hoja (O(log n) nodos) y lo instala con
+// compareAndSet: varios hilos publican a la vez sin bloqueos y, si dos coinciden, el que pierde
+// reintenta sobre la raíz nueva. Leer es tomar la raíz: una instantánea no cambia aunque otros
+// publiquen o borren mientras se recorre, y nunca lanza ConcurrentModificationException
+//
+// Las publicaciones nuevas se envían además a las sesiones suscritas (java.util.concurrent.Flow).
+// Cada suscriptor tiene su propio búfer acotado; si se llena, la publicación se descarta solo para
+// ese suscriptor y se le avisa (ver MuroSubscriber), así que una vista lenta nunca frena a quien publica.
+// Los borrados no pasan por el publicador: se avisa directamente a cada MuroSubscriber para que su vista
+// vuelva a tomar el muro
+public final class MuroService {
+    // Publicaciones pendientes de entregar por suscriptor antes de empezar a descartar
+    public static final int SUBSCRIBER_BUFFER = 256;
+
+    // Hilos que entregan las publicaciones; daemon para no impedir que la aplicación termine
+    private static final ExecutorService DELIVERY = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "muro-subscriptions");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicReference<Node> root = new AtomicReference<>();
+    // Desempata las publicaciones con la misma fecha y hora por orden de llegada
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicBoolean loaded = new AtomicBoolean();
+    private final SubmissionPublisher<PublicacionMuro> publisher =
+            new SubmissionPublisher<>(DELIVERY, SUBSCRIBER_BUFFER);
+
+    // Agrega una publicación en su posición, tras las de la misma fecha y hora
+    public void add(PublicacionMuro publicacion) {
+        long orden = sequence.getAndIncrement();
+        while (true) {
+            Node actual = root.get();
+            if (root.compareAndSet(actual, insert(actual, publicacion, orden))) {
+                break;
+            }
+        }
+        // Ya está en el muro cuando llega a los suscriptores: una instantánea tomada al recibirla la incluye
+        publisher.offer(publicacion, MuroService::onOverflow);
+    }
+
+    // Suscribe una sesión a las publicaciones nuevas (no recibe las que ya había)
+    public void subscribe(Flow.Subscriber<? super PublicacionMuro> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    // El búfer del suscriptor está lleno: se descarta la publicación para él sin esperar ni reintentar
+    private static boolean onOverflow(Flow.Subscriber<? super PublicacionMuro> subscriber, PublicacionMuro publicacion) {
+        if (subscriber instanceof MuroSubscriber) {
+            ((MuroSubscriber) subscriber).overflowed(publicacion);
+        }
+        return false;
+    }
+
+    // Elimina todas las publicaciones de un usuario de una sola vez: ningún lector ve el borrado a medias
+    // Devuelve cuántas se eliminaron
+    public int removeByUser(String usuario) {
+        while (true) {
+            Node actual = root.get();
+            List<Node> restantes = new ArrayList<>(size(actual));
+            int eliminadas = 0;
+            for (Iterator<Node> it = new InOrder(actual); it.hasNext(); ) {
+                Node node = it.next();
+                if (node.publicacion.getUsuario().equals(usuario)) {
+                    eliminadas++;
+                } else {
+                    restantes.add(node);
+                }
+            }
+            if (eliminadas == 0) {
+                return 0;
+            }
+            if (root.compareAndSet(actual, build(restantes, 0, restantes.size()))) {
+                notifyRemoved();
+                return eliminadas;
+            }
+        }
+    }
+
+    // Avisa a las sesiones suscritas de que el muro perdió publicaciones
+    private void notifyRemoved() {
+        for (Flow.Subscriber<? super PublicacionMuro> subscriber : publisher.getSubscribers()) {
+            if (subscriber instanceof MuroSubscriber) {
+                ((MuroSubscriber) subscriber).removed();
+            }
+        }
+    }
+
+    // Carga las publicaciones guardadas la primera vez que se llama; después el muro en memoria ya
+    // incluye todo lo que este proceso escribió en el archivo y las llamadas siguientes no hacen nada
+    // Devuelve false si ya estaba cargado
+    public boolean load(Collection<PublicacionMuro> guardadas) {
+        if (!loaded.compareAndSet(false, true)) {
+            return false;
+        }
+        List<PublicacionMuro> ordenadas = new ArrayList<>(guardadas);
+        ordenadas.sort(Comparator.comparing(PublicacionMuro::getFecha).thenComparing(PublicacionMuro::getHora));
+        List<Node> nodes = new ArrayList<>(ordenadas.size());
+        for (PublicacionMuro publicacion : ordenadas) {
+            nodes.add(new Node(publicacion, sequence.getAndIncrement(), null, null));
+        }
+        Node cargado = build(nodes, 0, nodes.size());
+        while (true) {
+            // Conserva lo que se haya publicado antes de terminar la carga
+            Node actual = root.get();
+            Node combinado = cargado;
+            for (Iterator<Node> it = new InOrder(actual); it.hasNext(); ) {
+                Node node = it.next();
+                combinado = insert(combinado, node.publicacion, node.sequence);
+            }
+            if (root.compareAndSet(actual, combinado)) {
+                return true;
+            }
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded.get();
+    }
+
+    // Vista inmutable del muro en este instante; cuesta una lectura de la raíz
+    public Snapshot snapshot() {
+        return new Snapshot(root.get());
+    }
+
+    public int size() {
+        return size(root.get());
+    }
+
+    public boolean isEmpty() {
+        return root.get() == null;
+    }
+
+    // Publicaciones del muro en un instante, en orden de fecha y hora, con acceso por posición en O(log n)
+    public static final class Snapshot implements Iterable<PublicacionMuro> {
+        private final Node root;
+
+        private Snapshot(Node root) {
+            this.root = root;
+        }
+
+        public int size() {
+            return MuroService.size(root);
+        }
+
+        public boolean isEmpty() {
+            return root == null;
+        }
+
+        public PublicacionMuro get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+            }
+            Node node = root;
+            while (true) {
+                int izquierda = MuroService.size(node.left);
+                if (index < izquierda) {
+                    node = node.left;
+                } else if (index == izquierda) {
+                    return node.publicacion;
+                } else {
+                    index -= izquierda + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        // Número de publicaciones anteriores a una fecha, que es también la posición de la
+        // primera publicación de esa fecha o posterior
+        public int countBefore(LocalDate fecha) {
+            int count = 0;
+            Node node = root;
+            while (node != null) {
+                if (node.publicacion.getFecha().isBefore(fecha)) {
+                    count += MuroService.size(node.left) + 1;
+                    node = node.right;
+                } else {
+                    node = node.left;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public Iterator<PublicacionMuro> iterator() {
+            InOrder nodes = new InOrder(root);
+            return new Iterator<PublicacionMuro>() {
+                @Override
+                public boolean hasNext() {
+                    return nodes.hasNext();
+                }
+
+                @Override
+                public PublicacionMuro next() {
+                    return nodes.next().publicacion;
+                }
+            };
+        }
+    }
+
+    // Nodo inmutable: publicación, orden de llegada, hijos, altura y tamaño del subárbol
+    private static final class Node {
+        final PublicacionMuro publicacion;
+        final long sequence;
+        final Node left;
+        final Node right;
+        final int height;
+        final int size;
+
+        Node(PublicacionMuro publicacion, long sequence, Node left, Node right) {
+            this.publicacion = publicacion;
+            this.sequence = sequence;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = MuroService.size(left) + MuroService.size(right) + 1;
+        }
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    // Devuelve un árbol nuevo con la publicación; los subárboles que no toca se comparten con el anterior
+    private static Node insert(Node node, PublicacionMuro publicacion, long orden) {
+        if (node == null) {
+            return new Node(publicacion, orden, null, null);
+        }
+        int comparacion = publicacion.getFecha().compareTo(node.publicacion.getFecha());
+        if (comparacion == 0) {
+            comparacion = publicacion.getHora().compareTo(node.publicacion.getHora());
+        }
+        if (comparacion == 0) {
+            comparacion = Long.compare(orden, node.sequence);
+        }
+        return comparacion < 0
+                ? balance(node, insert(node.left, publicacion, orden), node.right)
+                : balance(node, node.left, insert(node.right, publicacion, orden));
+    }
+
+    // Copia de un nodo con otros hijos, rotada si las alturas difieren en más de uno
+    private static Node balance(Node data, Node left, Node right) {
+        if (height(left) > height(right) + 1) {
+            if (height(left.left) < height(left.right)) {
+                left = new Node(left.right.publicacion, left.right.sequence,
+                        copy(left, left.left, left.right.left), left.right.right);
+            }
+            return copy(left, left.left, copy(data, left.right, right));
+        }
+        if (height(right) > height(left) + 1) {
+            if (height(right.right) < height(right.left)) {
+                right = new Node(right.left.publicacion, right.left.sequence,
+                        right.left.left, copy(right, right.left.right, right.right));
+            }
+            return copy(right, copy(data, left, right.left), right.right);
+        }
+        return copy(data, left, right);
+    }
+
+    private static Node copy(Node data, Node left, Node right) {
+        return new Node(data.publicacion, data.sequence, left, right);
+    }
+
+    // Árbol equilibrado a partir de nodos ya ordenados, en O(n)
+    private static Node build(List<Node> nodes, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        return copy(nodes.get(mid), build(nodes, from, mid), build(nodes, mid + 1, to));
+    }
+
+    // Recorrido en orden con una pila explícita (la altura de un AVL es O(log n))
+    private static final class InOrder implements Iterator<Node> {
+        private final Deque<Node> pendientes = new ArrayDeque<>();
+
+        InOrder(Node root) {
+            descend(root);
+        }
+
+        private void descend(Node node) {
+            while (node != null) {
+                pendientes.push(node);
+                node = node.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !pendientes.isEmpty();
+        }
+
+        @Override
+        public Node next() {
+            if (pendientes.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node node = pendientes.pop();
+            descend(node.right);
+            return node;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package calendario;
+
+import calendario.SocialCalendarApp.PublicacionMuro;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Prueba de carga concurrente del muro compartido
+// Uso: java calendario.MuroServiceStress [escritores] [publicaciones por escritor] [lectores]
+//
+// Los escritores publican en fechas al azar; una de cada diez publicaciones es de un usuario que
+// otro hilo borra sin parar con removeByUser. Los lectores recorren instantáneas mientras tanto y
+// comprueban que están ordenadas, que su tamaño coincide con lo recorrido, que get y countBefore
+// concuerdan con el recorrido y que recorrer dos veces la misma instantánea da lo mismo.
+// Al terminar no puede quedar nada del usuario borrado ni faltar nada de los demás
+// Sale con código 1 si alguna comprobación falla
+public class MuroServiceStress {
+    private static final String BORRADO = "victim";
+
+    public static void main(String[] args) throws InterruptedException {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int perWriter = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int readers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+        MuroService muro = new MuroService();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong snapshots = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        AtomicLong removed = new AtomicLong();
+        AtomicLong borradoAdds = new AtomicLong();
+
+        List<Thread> escritores = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int id = w;
+            escritores.add(new Thread(() -> {
+                Random random = new Random(id);
+                for (int i = 0; i < perWriter; i++) {
+                    boolean borrar = i % 10 == 0;
+                    muro.add(publicacion(borrar ? BORRADO : "w" + id, i, random));
+                    if (borrar) {
+                        borradoAdds.incrementAndGet();
+                    }
+                }
+            }));
+        }
+
+        List<Thread> lectores = new ArrayList<>();
+        for (int k = 0; k < readers; k++) {
+            int id = k;
+            lectores.add(new Thread(() -> {
+                Random random = new Random(100 + id);
+                while (!done.get()) {
+                    errors.addAndGet(check(muro.snapshot(), random));
+                    snapshots.incrementAndGet();
+                }
+            }));
+        }
+
+        Thread borrador = new Thread(() -> {
+            while (!done.get()) {
+                removed.addAndGet(muro.removeByUser(BORRADO));
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+
+        long start = System.nanoTime();
+        lectores.forEach(Thread::start);
+        borrador.start();
+        escritores.forEach(Thread::start);
+        for (Thread escritor : escritores) {
+            escritor.join();
+        }
+        long writeNanos = System.nanoTime() - start;
+        done.set(true);
+        for (Thread lector : lectores) {
+            lector.join();
+        }
+        borrador.join();
+        removed.addAndGet(muro.removeByUser(BORRADO));
+
+        // Cada escritor publicó perWriter, de las que una de cada diez eran del usuario borrado
+        int esperadasPorEscritor = perWriter - (perWriter + 9) / 10;
+        int[] porEscritor = new int[writers];
+        for (PublicacionMuro publicacion : muro.snapshot()) {
+            if (publicacion.getUsuario().equals(BORRADO)) {
+                errors.incrementAndGet();
+            } else {
+                porEscritor[Integer.parseInt(publicacion.getUsuario().substring(1))]++;
+            }
+        }
+        for (int cantidad : porEscritor) {
+            if (cantidad != esperadasPorEscritor) {
+                errors.incrementAndGet();
+            }
+        }
+
+        System.out.printf("%d writers x %d posts, %d readers: %.0f ms (%.0f adds/s), %d snapshots%n",
+                writers, perWriter, readers, writeNanos / 1e6, writers * perWriter / (writeNanos / 1e9),
+                snapshots.get());
+        System.out.printf("Removed %d of %d, size %d, expected %d, errors %d%n",
+                removed.get(), borradoAdds.get(), muro.size(), (long) writers * esperadasPorEscritor, errors.get());
+        if (errors.get() != 0 || removed.get() != borradoAdds.get()) {
+            System.err.println("FAILED: the wall lost, duplicated or misordered posts");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private static PublicacionMuro publicacion(String usuario, int i, Random random) {
+        return new PublicacionMuro(usuario, "m" + i, LocalDate.of(2024, 1, 1).plusDays(random.nextInt(365)),
+                LocalTime.of(random.nextInt(24), random.nextInt(60)));
+    }
+
+    // Errores encontrados en una instantánea
+    private static int check(MuroService.Snapshot snapshot, Random random) {
+        int errors = 0;
+        int recorridas = 0;
+        PublicacionMuro anterior = null;
+        for (PublicacionMuro publicacion : snapshot) {
+            if (anterior != null && !enOrden(anterior, publicacion)) {
+                errors++;
+            }
+            anterior = publicacion;
+            recorridas++;
+        }
+        if (recorridas != snapshot.size()) {
+            errors++;
+        }
+        if (recorridas > 0) {
+            int index = random.nextInt(recorridas);
+            int posicion = 0;
+            PublicacionMuro recorrida = null;
+            for (PublicacionMuro publicacion : snapshot) {
+                if (posicion++ == index) {
+                    recorrida = publicacion;
+                    break;
+                }
+            }
+            if (recorrida != snapshot.get(index)) {
+                errors++;
+            }
+            LocalDate fecha = snapshot.get(index).getFecha();
+            int antes = snapshot.countBefore(fecha);
+            if (antes > 0 && !snapshot.get(antes - 1).getFecha().isBefore(fecha)) {
+                errors++;
+            }
+            if (!snapshot.get(antes).getFecha().equals(fecha)) {
+                errors++;
+            }
+        }
+        int otraVez = 0;
+        for (PublicacionMuro ignored : snapshot) {
+            otraVez++;
+        }
+        if (otraVez != recorridas) {
+            errors++;
+        }
+        return errors;
+    }
+
+    private static boolean enOrden(PublicacionMuro a, PublicacionMuro b) {
+        int comparacion = a.getFecha().compareTo(b.getFecha());
+        return comparacion < 0 || (comparacion == 0 && a.getHora().compareTo(b.getHora()) <= 0);
+    }
+}
@@ -0,0 +1,107 @@
+package calendario;
+
+import calendario.SocialCalendarApp.PublicacionMuro;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Suscripción de una sesión a las publicaciones nuevas del muro
+// Cuenta las de otros usuarios desde la última vez que se vio el muro y avisa a la vista del muro
+// si hay una abierta. Las publicaciones que se descartan porque el búfer estaba lleno también
+// cuentan como nuevas: la vista no las necesita una a una porque se pone al día con una instantánea.
+// Cuando se borran publicaciones del muro también se avisa a la vista, sin contar nada como nuevo
+public class MuroSubscriber implements Flow.Subscriber<PublicacionMuro> {
+    private final String usuario;
+    private final AtomicInteger nuevas = new AtomicInteger();
+    private final AtomicLong descartadas = new AtomicLong();
+    private volatile Flow.Subscription subscription;
+    private volatile boolean cancelled;
+    // Aviso para la vista abierta; se llama desde el hilo de entrega o desde el que borra, nunca desde el de Swing
+    private volatile Runnable listener;
+
+    public MuroSubscriber(String usuario) {
+        this.usuario = usuario;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (cancelled) {
+            // La sesión terminó antes de que llegara la suscripción
+            subscription.cancel();
+            return;
+        }
+        // El límite lo pone el búfer acotado del publicador, no la demanda
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(PublicacionMuro publicacion) {
+        contar(publicacion);
+        notifyListener();
+    }
+
+    // Llamado por MuroService cuando una publicación no cabe en el búfer de esta sesión
+    void overflowed(PublicacionMuro publicacion) {
+        descartadas.incrementAndGet();
+        contar(publicacion);
+        notifyListener();
+    }
+
+    // Llamado por MuroService cuando se borran publicaciones: la vista abierta debe volver a tomar el muro
+    void removed() {
+        notifyListener();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        // La sesión sigue funcionando sin avisos; el muro se puede seguir abriendo
+        listener = null;
+    }
+
+    @Override
+    public void onComplete() {
+        listener = null;
+    }
+
+    // Publicaciones de otros usuarios desde la última llamada
+    public int takeNuevas() {
+        return nuevas.getAndSet(0);
+    }
+
+    public int getNuevas() {
+        return nuevas.get();
+    }
+
+    public long getDescartadas() {
+        return descartadas.get();
+    }
+
+    public void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        listener = null;
+        Flow.Subscription actual = subscription;
+        if (actual != null) {
+            actual.cancel();
+        }
+    }
+
+    // Las publicaciones propias no cuentan como nuevas
+    private void contar(PublicacionMuro publicacion) {
+        if (!publicacion.getUsuario().equals(usuario)) {
+            nuevas.incrementAndGet();
+        }
+    }
+
+    private void notifyListener() {
+        Runnable actual = listener;
+        if (actual != null) {
+            actual.run();
+        }
+    }
+}
@@ -11,11 +11,15 @@ import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class SocialCalendarApp {
     private User user;
     private java.util.List<Evento> eventos;
-    public static java.util.List<PublicacionMuro> muro = new ArrayList<>();
+    // Publicaciones nuevas de otros usuarios mientras la sesión está abierta
+    private MuroSubscriber novedades;
+    // Muro compartido por todas las sesiones; ver MuroService
+    private static final MuroService muro = new MuroService();
 
     // Clase interna para representar un evento
     public static class Evento {
@@ -130,6 +134,16 @@ public class SocialCalendarApp {
     }
 
     public void start() {
+        novedades = new MuroSubscriber(user.getUsername());
+        muro.subscribe(novedades);
+        try {
+            menu();
+        } finally {
+            novedades.cancel();
+        }
+    }
+
+    private void menu() {
         while (true) {
             String[] options = {
                 "Crear evento",
@@ -140,9 +154,11 @@ public class SocialCalendarApp {
                 "Salir"
             };
 
+            int pendientes = novedades.getNuevas();
             int choice = JOptionPane.showOptionDialog(
                 null,
-                "Menú de Calendario Social",
+                pendientes == 0 ? "Menú de Calendario Social"
+                        : "Menú de Calendario Social\n" + pendientes + " publicaciones nuevas en el muro",
                 "Usuario: " + user.getUsername(),
                 JOptionPane.DEFAULT_OPTION,
                 JOptionPane.PLAIN_MESSAGE,
@@ -165,7 +181,7 @@ public class SocialCalendarApp {
     
     public void eliminarEventoMuro(String userToRemove) {
         // Eliminar publicaciones del muro del usuario
-        muro.removeIf(publicacion -> publicacion.getUsuario().equals(userToRemove));
+        muro.removeByUser(userToRemove);
         saveMuro(); // Guardar cambios en el archivo del muro
         
         // Eliminar archivo de eventos del usuario
@@ -402,38 +418,172 @@ public class SocialCalendarApp {
 
         // Crear publicación
         PublicacionMuro nuevaPublicacion = new PublicacionMuro(user.getUsername(), mensaje, fecha, hora);
+        // Queda en su posición por fecha y hora sin reordenar el muro
         muro.add(nuevaPublicacion);
-        
-        // Ordenar publicaciones por fecha y hora
-        muro.sort(new Comparator<PublicacionMuro>() {
-            public int compare(PublicacionMuro p1, PublicacionMuro p2) {
-                int fechaComparacion = p1.getFecha().compareTo(p2.getFecha());
-                if (fechaComparacion == 0) {
-                    return p1.getHora().compareTo(p2.getHora());
-                }
-                return fechaComparacion;
-            }
-        });
-        
         saveMuro();
         JOptionPane.showMessageDialog(null, "Publicado en el muro social.");
     }
 
     public void mostrarMuro() {
-        if (muro.isEmpty()) {
+        // Instantánea: lo que publiquen o borren otras sesiones no cambia la lista mientras se recorre;
+        // las publicaciones nuevas llegan por la suscripción y sustituyen la instantánea entera
+        MuroService.Snapshot publicaciones = muro.snapshot();
+        if (publicaciones.isEmpty()) {
             JOptionPane.showMessageDialog(null, "El muro está vacío.");
-        } else {
-            StringBuilder sb = new StringBuilder("Muro Social:\n\n");
-            for (PublicacionMuro publicacion : muro) {
-                sb.append(publicacion.toString()).append("\n\n");
-                sb.append("─────────────────────────────────\n\n");
+            return;
+        }
+        if (novedades != null) {
+            novedades.takeNuevas();
+        }
+
+        // Lista virtual: el modelo no copia el muro y solo se formatean las filas visibles
+        MuroListModel model = new MuroListModel(publicaciones);
+        JList<PublicacionMuro> lista = new JList<>(model);
+        lista.setCellRenderer(new MuroCellRenderer());
+        // Con alto y ancho fijos JList no dibuja cada publicación para calcular el tamaño de la lista
+        lista.setFixedCellHeight(42);
+        lista.setFixedCellWidth(420);
+        lista.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        JScrollPane scrollPane = new JScrollPane(lista);
+        scrollPane.setPreferredSize(new Dimension(450, 400));
+
+        JCheckBox recientesPrimero = new JCheckBox("Más recientes primero");
+        recientesPrimero.addActionListener(e -> {
+            model.setNewestFirst(recientesPrimero.isSelected());
+            lista.clearSelection();
+            lista.ensureIndexIsVisible(0);
+        });
+
+        JTextField fechaField = new JTextField(10);
+        JButton irAFecha = new JButton("Ir a fecha");
+        irAFecha.addActionListener(e -> {
+            LocalDate fecha;
+            try {
+                fecha = LocalDate.parse(fechaField.getText().trim(), DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+            } catch (DateTimeParseException ex) {
+                JOptionPane.showMessageDialog(null, "Formato de fecha inválido. Usa dd/mm/yyyy");
+                return;
             }
-            
-            JTextArea textArea = new JTextArea(sb.toString());
-            textArea.setEditable(false);
-            JScrollPane scrollPane = new JScrollPane(textArea);
-            scrollPane.setPreferredSize(new Dimension(450, 400));
-            JOptionPane.showMessageDialog(null, scrollPane, "Muro Social", JOptionPane.INFORMATION_MESSAGE);
+            int index = model.indexOf(fecha);
+            if (index < 0) {
+                JOptionPane.showMessageDialog(null, "No hay publicaciones desde esa fecha.");
+                return;
+            }
+            lista.setSelectedIndex(index);
+            // Deja la publicación arriba del todo y no solo dentro de la parte visible
+            Rectangle celda = lista.getCellBounds(index, index);
+            celda.height = scrollPane.getViewport().getHeight();
+            lista.scrollRectToVisible(celda);
+        });
+
+        JPanel controles = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controles.add(recientesPrimero);
+        controles.add(new JLabel("Fecha (dd/mm/yyyy):"));
+        controles.add(fechaField);
+        controles.add(irAFecha);
+
+        JLabel total = new JLabel("Publicaciones: " + publicaciones.size());
+        JPanel panel = new JPanel(new BorderLayout(5, 5));
+        panel.add(total, BorderLayout.NORTH);
+        panel.add(scrollPane, BorderLayout.CENTER);
+        panel.add(controles, BorderLayout.SOUTH);
+
+        if (novedades != null) {
+            // Varias publicaciones seguidas se agrupan en una sola actualización de la lista
+            AtomicBoolean pendiente = new AtomicBoolean();
+            novedades.setListener(() -> {
+                if (pendiente.compareAndSet(false, true)) {
+                    SwingUtilities.invokeLater(() -> {
+                        pendiente.set(false);
+                        novedades.takeNuevas();
+                        MuroService.Snapshot actual = muro.snapshot();
+                        model.update(actual);
+                        total.setText("Publicaciones: " + actual.size());
+                    });
+                }
+            });
+        }
+        try {
+            JOptionPane.showMessageDialog(null, panel, "Muro Social", JOptionPane.INFORMATION_MESSAGE);
+        } finally {
+            if (novedades != null) {
+                novedades.setListener(null);
+                novedades.takeNuevas();
+            }
+        }
+    }
+
+    // Modelo de lista sobre una instantánea del muro, sin copiarla; permite verlo al revés
+    static class MuroListModel extends AbstractListModel<PublicacionMuro> {
+        private static final long serialVersionUID = 1L;
+
+        private MuroService.Snapshot publicaciones;
+        private boolean newestFirst;
+
+        MuroListModel(MuroService.Snapshot publicaciones) {
+            this.publicaciones = publicaciones;
+        }
+
+        @Override
+        public int getSize() {
+            return publicaciones.size();
+        }
+
+        @Override
+        public PublicacionMuro getElementAt(int index) {
+            return publicaciones.get(newestFirst ? publicaciones.size() - 1 - index : index);
+        }
+
+        // Cambia a una instantánea más reciente del muro (desde el hilo de Swing)
+        void update(MuroService.Snapshot publicaciones) {
+            int anterior = this.publicaciones.size();
+            this.publicaciones = publicaciones;
+            int actual = publicaciones.size();
+            if (actual > anterior) {
+                fireIntervalAdded(this, anterior, actual - 1);
+            } else if (actual < anterior) {
+                fireIntervalRemoved(this, actual, anterior - 1);
+            }
+            if (actual > 0) {
+                fireContentsChanged(this, 0, actual - 1);
+            }
+        }
+
+        void setNewestFirst(boolean newestFirst) {
+            if (this.newestFirst != newestFirst) {
+                this.newestFirst = newestFirst;
+                fireContentsChanged(this, 0, Math.max(0, getSize() - 1));
+            }
+        }
+
+        // Fila de la primera publicación de esa fecha o posterior (o, al revés, de esa fecha o anterior)
+        // con una búsqueda en el árbol del muro; -1 si no hay ninguna
+        int indexOf(LocalDate fecha) {
+            int low = publicaciones.countBefore(newestFirst ? fecha.plusDays(1) : fecha);
+            if (newestFirst) {
+                return low == 0 ? -1 : publicaciones.size() - low;
+            }
+            return low == publicaciones.size() ? -1 : low;
+        }
+    }
+
+    // Dibuja cada publicación al pintarla; las que no se ven nunca se formatean
+    static class MuroCellRenderer extends DefaultListCellRenderer {
+        private static final long serialVersionUID = 1L;
+        private static final DateTimeFormatter FORMATO = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            PublicacionMuro publicacion = (PublicacionMuro) value;
+            String texto = "<html><b>" + escape(publicacion.getUsuario()) + "</b> ("
+                    + publicacion.getFecha().atTime(publicacion.getHora()).format(FORMATO) + ")<br>"
+                    + escape(publicacion.getMensaje()) + "</html>";
+            return super.getListCellRendererComponent(list, texto, index, isSelected, cellHasFocus);
+        }
+
+        private static String escape(String texto) {
+            return texto.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
         }
     }
 
@@ -494,7 +644,13 @@ public class SocialCalendarApp {
         return eventosLoad;
     }
 
-    public static void saveMuro() {
+    public static MuroService getMuro() {
+        return muro;
+    }
+
+    // Sincronizado para que dos sesiones no escriban el archivo a la vez; cada guardado toma la
+    // instantánea con el bloqueo, así que el último en escribir deja el muro más reciente
+    public static synchronized void saveMuro() {
         try {
             Path dataDir = Paths.get("data");
             if (!Files.exists(dataDir)) {
@@ -502,7 +658,7 @@ public class SocialCalendarApp {
             }
 
             try (PrintWriter writer = new PrintWriter(new FileWriter("data/muro.txt"))) {
-                for (PublicacionMuro publicacion : muro) {
+                for (PublicacionMuro publicacion : muro.snapshot()) {
                     writer.println(publicacion.toFileString());
                 }
             }
@@ -512,37 +668,29 @@ public class SocialCalendarApp {
     }
 
     public static void loadMuro() {
+        // El archivo solo se lee una vez: después el muro en memoria ya tiene todo lo guardado
+        if (muro.isLoaded()) {
+            return;
+        }
         File file = new File("data/muro.txt");
-        
-        
-        
         if (!file.exists()) {
+            muro.load(Collections.emptyList());
             return;
         }
 
+        java.util.List<PublicacionMuro> publicaciones = new ArrayList<>();
         try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
             String linea;
-            muro.clear();
             while ((linea = reader.readLine()) != null) {
                 if (!linea.trim().isEmpty()) {
                     PublicacionMuro publicacion = PublicacionMuro.fromFileString(linea.trim());
                     if (publicacion != null) {
-                        muro.add(publicacion);
+                        publicaciones.add(publicacion);
                     }
                 }
             }
-            
-            // Ordenar publicaciones después de cargar
-            muro.sort(new Comparator<PublicacionMuro>() {
-                public int compare(PublicacionMuro p1, PublicacionMuro p2) {
-                    int fechaComparacion = p1.getFecha().compareTo(p2.getFecha());
-                    if (fechaComparacion == 0) {
-                        return p1.getHora().compareTo(p2.getHora());
-                    }
-                    return fechaComparacion;
-                }
-            });
-            
+            // Se instala de una vez, ya ordenado: ninguna sesión ve el muro a medio cargar
+            muro.load(publicaciones);
         } catch (IOException e) {
             JOptionPane.showMessageDialog(null, "Error cargando muro: " + e.getMessage());
         }
@@ -0,0 +1,506 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Almacén de cuentas seguro para hilos, optimizado para lecturas
+ * Las búsquedas por nombre de usuario (autenticación) usan un mapa concurrente y nunca se bloquean;
+ * los listados copian la lista ordenada con una lectura optimista de StampedLock;
+ * las altas y bajas se serializan con el lock de escritura
+ * Un filtro de Bloom delante del mapa descarta sin búsqueda los nombres que no existen
+ *
+ * En modo diferido (lazy) las cuentas no se cargan al arrancar: cada búsqueda que no está en el
+ * mapa se resuelve con una lectura puntual del repositorio y se queda en el mapa como caché,
+ * limitada a userauth.lazy.cacheSize cuentas (salen primero las leídas hace más tiempo; las altas
+ * de esta ejecución no salen). Los listados recorren el repositorio como stream, sin copiar todas
+ * las cuentas a memoria, y el total se mantiene con un contador en lugar de recorrerlo.
+ * El filtro de Bloom y el contador se llenan al arrancar con un recorrido de los nombres, así que un
+ * nombre desconocido se descarta sin ninguna lectura del repositorio
+ * @param <T> tipo de cuenta almacenada (User o Admin)
+ */
+class AccountStore<T extends User> {
+    // Tasa de falsos positivos del filtro, configurable con -Duserauth.bloom.fpp
+    private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_BLOOM_CAPACITY = 1024;
+    // Cuentas que se copian de cada vez al recorrer la lista en memoria
+    private static final int STREAM_CHUNK = 256;
+    // Cuentas leídas del repositorio que se conservan en modo diferido
+    private static final int DEFAULT_LAZY_CACHE_SIZE = 10_000;
+
+    private final StampedLock lock = new StampedLock();
+    // Cuentas en orden de alta; solo se modifica con el lock de escritura
+    private final List<T> accounts;
+    private final Map<String, T> accountsByUsername;
+    private final UsernameBloomFilter knownUsernames;
+    private final LongAdder filteredLookups = new LongAdder();
+
+    // Solo en modo diferido: lectura puntual, recorrido completo y nombres eliminados en esta ejecución
+    private final Function<String, T> finder;
+    private final Supplier<Stream<T>> scanner;
+    private final Set<String> removedNames;
+    // Solo en modo diferido: altas de esta ejecución (no salen de la caché) y cuentas leídas en orden de lectura
+    private final Set<String> addedNames;
+    private final Queue<String> loadedNames;
+    private final AtomicInteger loadedCount;
+    private final int cacheLimit;
+    // Solo en modo diferido: total de cuentas; solo se modifica con el lock de escritura
+    private volatile long lazyCount;
+
+    /**
+     * Construye el almacén a partir de una lista de cuentas existente
+     * Si hay nombres repetidos se conserva la primera cuenta
+     * @param initialAccounts cuentas cargadas del repositorio
+     */
+    public AccountStore(List<T> initialAccounts) {
+        this(initialAccounts, Double.parseDouble(System.getProperty("userauth.bloom.fpp",
+                String.valueOf(DEFAULT_FALSE_POSITIVE_RATE))));
+    }
+
+    /**
+     * Construye el almacén y su filtro de Bloom con la tasa de falsos positivos indicada
+     * El filtro se dimensiona para el doble de las cuentas cargadas, dejando margen para altas nuevas
+     * @param initialAccounts cuentas cargadas del repositorio
+     * @param falsePositiveRate tasa de falsos positivos del filtro de nombres conocidos
+     */
+    public AccountStore(List<T> initialAccounts, double falsePositiveRate) {
+        this.accounts = new ArrayList<>(initialAccounts.size());
+        this.accountsByUsername = new ConcurrentHashMap<>(Math.max(16, initialAccounts.size() * 2));
+        this.knownUsernames = new UsernameBloomFilter(
+                Math.max(MIN_BLOOM_CAPACITY, initialAccounts.size() * 2), falsePositiveRate);
+        this.finder = null;
+        this.scanner = null;
+        this.removedNames = null;
+        this.addedNames = null;
+        this.loadedNames = null;
+        this.loadedCount = null;
+        this.cacheLimit = 0;
+        for (T account : initialAccounts) {
+            add(account);
+        }
+    }
+
+    private AccountStore(Function<String, T> finder, Supplier<Stream<T>> scanner, long expectedAccounts,
+                         double falsePositiveRate, int cacheLimit) {
+        if (cacheLimit < 1) {
+            throw new IllegalArgumentException("Lazy cache size must be positive");
+        }
+        this.accounts = new ArrayList<>();
+        this.accountsByUsername = new ConcurrentHashMap<>();
+        this.knownUsernames = new UsernameBloomFilter(
+                (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_BLOOM_CAPACITY, expectedAccounts * 2)), falsePositiveRate);
+        this.finder = finder;
+        this.scanner = scanner;
+        this.removedNames = ConcurrentHashMap.newKeySet();
+        this.addedNames = ConcurrentHashMap.newKeySet();
+        this.loadedNames = new ConcurrentLinkedQueue<>();
+        this.loadedCount = new AtomicInteger();
+        this.cacheLimit = cacheLimit;
+        // Solo se guardan los nombres en el filtro y el total; las cuentas leídas no se retienen
+        long count = 0;
+        try (Stream<T> stored = scanner.get()) {
+            for (Iterator<T> it = stored.iterator(); it.hasNext(); count++) {
+                knownUsernames.add(it.next().getUsername());
+            }
+        }
+        this.lazyCount = count;
+    }
+
+    /**
+     * Crea un almacén en modo diferido sobre un repositorio con búsquedas puntuales
+     * No guarda ninguna cuenta en memoria: al arrancar solo recorre el repositorio una vez para
+     * llenar el filtro de nombres conocidos y contar las cuentas
+     * La caché de cuentas leídas se limita con la propiedad userauth.lazy.cacheSize (10000)
+     * Las altas, bajas y cambios deben seguir registrándose en el repositorio como mutaciones
+     * @param finder lectura puntual de una cuenta por nombre (null si no existe)
+     * @param scanner recorrido incremental del repositorio para los listados (se cierra tras usarlo)
+     * @param expectedAccounts número de cuentas del repositorio, para dimensionar el filtro
+     * @param <T> tipo de cuenta almacenada
+     * @return almacén diferido
+     */
+    public static <T extends User> AccountStore<T> lazy(Function<String, T> finder, Supplier<Stream<T>> scanner,
+                                                        long expectedAccounts) {
+        return new AccountStore<>(finder, scanner, expectedAccounts, Double.parseDouble(
+                System.getProperty("userauth.bloom.fpp", String.valueOf(DEFAULT_FALSE_POSITIVE_RATE))),
+                Integer.getInteger("userauth.lazy.cacheSize", DEFAULT_LAZY_CACHE_SIZE));
+    }
+
+    /**
+     * Busca una cuenta por su nombre de usuario sin bloquear
+     * @param username nombre de usuario a buscar
+     * @return la cuenta encontrada o null si no existe
+     */
+    public T get(String username) {
+        if (finder != null) {
+            return getOrLoad(username);
+        }
+        return isKnown(username) ? accountsByUsername.get(username) : null;
+    }
+
+    /**
+     * Verifica si existe una cuenta con el nombre de usuario dado
+     * @param username nombre de usuario a verificar
+     * @return true si la cuenta existe
+     */
+    public boolean contains(String username) {
+        if (finder != null) {
+            return getOrLoad(username) != null;
+        }
+        return isKnown(username) && accountsByUsername.containsKey(username);
+    }
+
+    /**
+     * Agrega una cuenta si su nombre de usuario no está ya registrado
+     * @param account cuenta a agregar
+     * @return true si se agregó, false si ya existía una cuenta con ese nombre
+     */
+    public boolean add(T account) {
+        long stamp = lock.writeLock();
+        try {
+            if (finder != null) {
+                String username = account.getUsername();
+                if (accountsByUsername.containsKey(username)
+                        || (!removedNames.contains(username) && knownUsernames.mightContain(username)
+                            && finder.apply(username) != null)) {
+                    return false;
+                }
+                accountsByUsername.put(username, account);
+                addedNames.add(username);
+                removedNames.remove(username);
+                knownUsernames.add(username);
+                lazyCount++;
+                return true;
+            }
+            if (accountsByUsername.putIfAbsent(account.getUsername(), account) != null) {
+                return false;
+            }
+            accounts.add(account);
+            knownUsernames.add(account.getUsername());
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Elimina una cuenta por su nombre de usuario
+     * @param username nombre de usuario de la cuenta a eliminar
+     * @return la cuenta eliminada o null si no existía
+     */
+    public T remove(String username) {
+        return remove(username, 0);
+    }
+
+    /**
+     * Elimina una cuenta solo si quedan más cuentas que el mínimo indicado
+     * La comprobación y la eliminación son atómicas respecto a otras escrituras
+     * @param username nombre de usuario de la cuenta a eliminar
+     * @param minimumRemaining número mínimo de cuentas que deben quedar
+     * @return la cuenta eliminada o null si no existía o no se podía eliminar
+     */
+    public T remove(String username, int minimumRemaining) {
+        if (username == null) {
+            return null;
+        }
+        long stamp = lock.writeLock();
+        try {
+            if (finder != null) {
+                if (minimumRemaining > 0 && lazyCount <= minimumRemaining) {
+                    return null;
+                }
+                T existing = accountsByUsername.remove(username);
+                if (existing == null && !removedNames.contains(username)) {
+                    existing = finder.apply(username);
+                }
+                if (existing != null) {
+                    removedNames.add(username);
+                    addedNames.remove(username);
+                    lazyCount--;
+                }
+                return existing;
+            }
+            if (accounts.size() <= minimumRemaining) {
+                return null;
+            }
+            T removed = accountsByUsername.remove(username);
+            if (removed != null) {
+                accounts.remove(removed);
+            }
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Obtiene una copia inmutable de las cuentas en orden de alta
+     * Intenta primero una lectura optimista y solo toma el lock de lectura si hubo una escritura concurrente
+     * @return instantánea de las cuentas
+     */
+    public List<T> snapshot() {
+        if (finder != null) {
+            long stamp = lock.readLock();
+            try {
+                return List.copyOf(collectLazy());
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                List<T> copy = List.copyOf(accounts);
+                if (lock.validate(stamp)) {
+                    return copy;
+                }
+            } catch (RuntimeException e) {
+                // Lectura inconsistente por una escritura concurrente: se repite con el lock de lectura
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return List.copyOf(accounts);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Recorre las cuentas en orden de alta sin copiarlas todas
+     * En memoria se copian bloques de STREAM_CHUNK cuentas a medida que se consumen; en modo diferido
+     * el recorrido lee el repositorio a medida que avanza. En ambos casos refleja las escrituras
+     * concurrentes de forma débilmente consistente (una baja durante el recorrido puede hacer que se
+     * salte una cuenta); debe cerrarse (try-with-resources) si no se agota
+     * @return stream de las cuentas
+     */
+    public Stream<T> stream() {
+        if (finder == null) {
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new ChunkIterator(),
+                    Spliterator.ORDERED | Spliterator.NONNULL), false);
+        }
+        // Las cuentas en caché sustituyen a las leídas y las eliminadas se omiten; al final van
+        // las altas que el repositorio aún no tiene registradas
+        Stream<T> stored = scanner.get()
+                .filter(account -> !removedNames.contains(account.getUsername()))
+                .map(account -> accountsByUsername.getOrDefault(account.getUsername(), account));
+        Stream<T> unregistered = addedNames.stream()
+                .filter(username -> !removedNames.contains(username) && finder.apply(username) == null)
+                .map(accountsByUsername::get)
+                .filter(account -> account != null);
+        return Stream.concat(stored, unregistered);
+    }
+
+    /**
+     * Obtiene una página de cuentas en orden de alta sin copiar el resto
+     * @param offset número de cuentas a saltar
+     * @param limit número máximo de cuentas de la página
+     * @return cuentas de la página (vacía si offset supera el total)
+     * @throws IllegalArgumentException si offset o limit son negativos
+     */
+    public List<T> page(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative");
+        }
+        if (finder == null) {
+            // Acceso directo por posición: solo se copia la página
+            return range(offset, (int) Math.min((long) offset + limit, Integer.MAX_VALUE));
+        }
+        try (Stream<T> accounts = stream()) {
+            return accounts.skip(offset).limit(limit).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Obtiene el número de cuentas almacenadas sin recorrerlas
+     * @return cantidad de cuentas
+     */
+    public int size() {
+        return finder != null ? (int) Math.min(lazyCount, Integer.MAX_VALUE) : accountsByUsername.size();
+    }
+
+    /**
+     * Verifica si el almacén está vacío
+     * @return true si no hay cuentas
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Obtiene el número de búsquedas descartadas por el filtro
+     * @return búsquedas de nombres desconocidos resueltas por el filtro (sin leer el repositorio en modo diferido)
+     */
+    public long getFilteredLookupCount() {
+        return filteredLookups.sum();
+    }
+
+    /**
+     * Obtiene el filtro de nombres conocidos para consultar su tamaño y tasa de falsos positivos
+     * @return filtro de Bloom del almacén
+     */
+    public UsernameBloomFilter getBloomFilter() {
+        return knownUsernames;
+    }
+
+    /**
+     * Copia las cuentas de un intervalo de posiciones de la lista en memoria
+     * Intenta primero una lectura optimista, como snapshot()
+     * @param from primera posición (incluida)
+     * @param to última posición (excluida); se recorta al tamaño actual
+     * @return copia del intervalo (vacía si from supera el tamaño)
+     */
+    private List<T> range(int from, int to) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                List<T> copy = copyRange(from, to);
+                if (lock.validate(stamp)) {
+                    return copy;
+                }
+            } catch (RuntimeException e) {
+                // Lectura inconsistente por una escritura concurrente: se repite con el lock de lectura
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return copyRange(from, to);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private List<T> copyRange(int from, int to) {
+        int end = Math.min(to, accounts.size());
+        return from >= end ? List.of() : List.copyOf(accounts.subList(from, end));
+    }
+
+    /**
+     * Recorrido de la lista en memoria por bloques de STREAM_CHUNK cuentas
+     */
+    private final class ChunkIterator implements Iterator<T> {
+        private List<T> chunk = List.of();
+        private int chunkStart;
+        private int position;
+
+        @Override
+        public boolean hasNext() {
+            if (position - chunkStart < chunk.size()) {
+                return true;
+            }
+            chunkStart = position;
+            chunk = range(position, position + STREAM_CHUNK);
+            return !chunk.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return chunk.get(position++ - chunkStart);
+        }
+    }
+
+    /**
+     * Busca en la caché y, si no está, lee la cuenta del repositorio (modo diferido)
+     * La cuenta leída se guarda con el lock de lectura, para que una baja concurrente no la vuelva a cachear
+     */
+    private T getOrLoad(String username) {
+        if (username == null) {
+            return null;
+        }
+        T cached = accountsByUsername.get(username);
+        if (cached != null || removedNames.contains(username)) {
+            return cached;
+        }
+        // Un nombre que nunca existió no llega a leer el repositorio
+        if (!isKnown(username)) {
+            return null;
+        }
+        T loaded = finder.apply(username);
+        if (loaded == null) {
+            return null;
+        }
+
+        long stamp = lock.readLock();
+        try {
+            if (removedNames.contains(username)) {
+                return null;
+            }
+            T previous = accountsByUsername.putIfAbsent(username, loaded);
+            if (previous != null) {
+                return previous;
+            }
+            loadedNames.add(username);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        if (loadedCount.incrementAndGet() > cacheLimit) {
+            evictLoaded();
+        }
+        return loaded;
+    }
+
+    /**
+     * Saca de la caché las cuentas leídas hace más tiempo hasta volver al límite (modo diferido)
+     * Las altas de esta ejecución se conservan: puede que el repositorio aún no las tenga.
+     * Una cuenta que sale se vuelve a leer en la próxima búsqueda; sus cambios ya se registraron
+     * como mutaciones al hacerlos
+     */
+    private void evictLoaded() {
+        while (loadedCount.get() > cacheLimit) {
+            String username = loadedNames.poll();
+            if (username == null) {
+                return;
+            }
+            loadedCount.decrementAndGet();
+            if (!addedNames.contains(username)) {
+                accountsByUsername.remove(username);
+            }
+        }
+    }
+
+    /**
+     * Combina el recorrido del repositorio con la caché (ver stream)
+     * Con algún lock del almacén tomado, el resultado es consistente con las altas y bajas
+     */
+    private List<T> collectLazy() {
+        try (Stream<T> accounts = stream()) {
+            return accounts.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Consulta el filtro antes de buscar en el mapa
+     * @param username nombre de usuario a consultar
+     * @return false si el nombre seguro que no existe
+     */
+    private boolean isKnown(String username) {
+        if (username == null) {
+            return false;
+        }
+        if (!knownUsernames.mightContain(username)) {
+            filteredLookups.increment();
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,150 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prueba de carga concurrente del AccountStore a través del servicio de autenticación
+ * Uso: java AccountStoreStress [hilos] [operaciones por hilo]
+ *
+ * Cada hilo autentica cuentas fijas con su contraseña mientras da de alta, elimina y cambia la
+ * contraseña de sus propias cuentas. Ningún login válido puede fallar, una cuenta eliminada no puede
+ * autenticarse, tras un cambio de contraseña solo vale la nueva y ninguna instantánea puede repetir
+ * cuentas. Al terminar, el tamaño del almacén y de su instantánea deben coincidir con las cuentas
+ * iniciales más las altas menos las bajas
+ * Sale con código 1 si alguna comprobación falla
+ */
+class AccountStoreStress {
+    private static final int SEED_ACCOUNTS = 2000;
+    private static final int ACCOUNTS_PER_THREAD = 16;
+    private static final String SEED_PASSWORD = "seed-password";
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+
+        // Un solo hash para todas las cuentas: el coste está en las verificaciones, no en preparar los datos
+        String seedHash = PasswordHasher.getDefault().hash(SEED_PASSWORD);
+        List<User> seed = new ArrayList<>(SEED_ACCOUNTS);
+        for (int i = 0; i < SEED_ACCOUNTS; i++) {
+            seed.add(new User("seed" + i, seedHash, false));
+        }
+        User[][] owned = new User[threads][ACCOUNTS_PER_THREAD];
+        for (int t = 0; t < threads; t++) {
+            for (int j = 0; j < ACCOUNTS_PER_THREAD; j++) {
+                owned[t][j] = new User("t" + t + "_" + j, seedHash, false);
+            }
+        }
+        AccountStore<User> store = new AccountStore<>(seed);
+        // Cola suficiente para que todos los hilos esperen a la vez: un rechazo por saturación no es un fallo
+        PasswordVerifier verifier = new PasswordVerifier(
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2), threads * 2);
+        BasicAuthenticationService auth = new BasicAuthenticationService(store, new AccountStore<>(List.of()), verifier);
+
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger removed = new AtomicInteger();
+        AtomicInteger logins = new AtomicInteger();
+        AtomicInteger passwordChanges = new AtomicInteger();
+        AtomicInteger snapshots = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            User[] mine = owned[t];
+            workers.add(executor.submit(() -> {
+                // Estado esperado de las cuentas propias: solo este hilo las modifica
+                boolean[] present = new boolean[ACCOUNTS_PER_THREAD];
+                String[] passwords = new String[ACCOUNTS_PER_THREAD];
+                Arrays.fill(passwords, SEED_PASSWORD);
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < operations; i++) {
+                    int j = random.nextInt(ACCOUNTS_PER_THREAD);
+                    User account = mine[j];
+                    int operation = random.nextInt(10);
+                    if (operation < 4) {
+                        // Login válido de una cuenta que nunca cambia
+                        if (auth.authenticate("seed" + random.nextInt(SEED_ACCOUNTS), SEED_PASSWORD, "user") == null) {
+                            failures.incrementAndGet();
+                        }
+                        logins.incrementAndGet();
+                    } else if (operation < 6) {
+                        if (store.add(account) != !present[j]) {
+                            failures.incrementAndGet();
+                        }
+                        if (!present[j]) {
+                            added.incrementAndGet();
+                            present[j] = true;
+                        }
+                        if (auth.authenticate(account.getUsername(), passwords[j], "user") != account) {
+                            failures.incrementAndGet();
+                        }
+                    } else if (operation < 8) {
+                        if ((store.remove(account.getUsername()) != null) != present[j]) {
+                            failures.incrementAndGet();
+                        }
+                        if (present[j]) {
+                            removed.incrementAndGet();
+                            present[j] = false;
+                        }
+                        if (auth.authenticate(account.getUsername(), passwords[j], "user") != null) {
+                            failures.incrementAndGet();
+                        }
+                    } else if (operation < 9) {
+                        String previous = passwords[j];
+                        String next = "pw" + i;
+                        if (!auth.changePassword(account, next, next)) {
+                            failures.incrementAndGet();
+                            continue;
+                        }
+                        passwords[j] = next;
+                        passwordChanges.incrementAndGet();
+                        User expected = present[j] ? account : null;
+                        if (auth.authenticate(account.getUsername(), next, "user") != expected
+                                || auth.authenticate(account.getUsername(), previous, "user") != null) {
+                            failures.incrementAndGet();
+                        }
+                    } else {
+                        List<User> snapshot = store.snapshot();
+                        if (new HashSet<>(snapshot).size() != snapshot.size()) {
+                            failures.incrementAndGet();
+                        }
+                        snapshots.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+        int expected = SEED_ACCOUNTS + added.get() - removed.get();
+        System.out.printf("%d threads x %d operations in %.2f s: %d logins, %d added, %d removed, "
+                        + "%d password changes, %d snapshots%n",
+                threads, operations, seconds, logins.get(), added.get(), removed.get(),
+                passwordChanges.get(), snapshots.get());
+        System.out.printf("Size %d, snapshot %d, expected %d, failed checks %d%n",
+                store.size(), store.snapshot().size(), expected, failures.get());
+        if (store.size() != expected || store.snapshot().size() != expected || failures.get() != 0) {
+            System.err.println("FAILED: the store lost an update or authenticated the wrong account");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+}
@@ -7,4 +7,9 @@ class Admin extends User implements Serializable {
     public Admin(String username, String password) {
         super(username, password);
     }
+
+    // Constructor de restauración desde almacenamiento con el hash ya calculado
+    Admin(String username, String passwordHash, boolean passwordResetPending) {
+        super(username, passwordHash, passwordResetPending);
+    }
 }
\ No newline at end of file
@@ -5,13 +5,13 @@ import java.util.List;
  * Maneja la creación, consulta y gestión de cuentas de administrador en el sistema
  */
 public class AdminManagementService {
-    private final List<Admin> admins;
+    private final AccountStore<Admin> admins;
 
     /**
      * Constructor del servicio de gestión de administradores
-     * @param admins lista de administradores del sistema
+     * @param admins almacén de administradores compartido con el servicio de autenticación
      */
-    public AdminManagementService(List<Admin> admins) {
+    public AdminManagementService(AccountStore<Admin> admins) {
         this.admins = admins;
     }
 
@@ -21,27 +21,34 @@ public class AdminManagementService {
      * @return el nuevo administrador creado
      */
     public Admin createAdmin() {
-        // Generar nombre de admin secuencial (admin1, admin2, etc.)
-        String adminUsername = generateAdminUsername();
         String defaultPassword = "admin123";
         
-        Admin newAdmin = new Admin(adminUsername, defaultPassword);
-        newAdmin.setPasswordResetPending(true); // Forzar cambio de contraseña
-        admins.add(newAdmin);
-        
-        return newAdmin;
+        // Generar nombre de admin secuencial (admin1, admin2, etc.); si otra alta concurrente
+        // toma el mismo nombre, se vuelve a generar
+        while (true) {
+            String adminUsername = generateAdminUsername();
+            Admin newAdmin = new Admin(adminUsername, defaultPassword);
+            newAdmin.setPasswordResetPending(true); // Forzar cambio de contraseña
+            if (admins.add(newAdmin)) {
+                return newAdmin;
+            }
+        }
     }
 
     /**
      * Asegura que existe al menos un administrador por defecto en el sistema
      * Si no hay administradores, crea uno con credenciales por defecto
+     * @return el administrador creado, o null si ya había alguno
      */
-    public void ensureDefaultAdmin() {
+    public Admin ensureDefaultAdmin() {
         if (admins.isEmpty()) {
             Admin defaultAdmin = new Admin("admin", "admin123");
             defaultAdmin.setPasswordResetPending(true);
-            admins.add(defaultAdmin);
+            if (admins.add(defaultAdmin)) {
+                return defaultAdmin;
+            }
         }
+        return null;
     }
 
     /**
@@ -57,7 +64,7 @@ public class AdminManagementService {
      * @return array de strings con los nombres de usuario de administradores
      */
     public String[] getAdminUsernames() {
-        return admins.stream()
+        return admins.snapshot().stream()
                 .map(Admin::getUsername)
                 .toArray(String[]::new);
     }
@@ -68,6 +75,7 @@ public class AdminManagementService {
      * @return string formateado con la información de todos los administradores
      */
     public String getAdminListString() {
+        List<Admin> admins = this.admins.snapshot();
         if (admins.isEmpty()) {
             return "No administrators registered in the system.";
         }
@@ -92,10 +100,8 @@ public class AdminManagementService {
      * @return true si se eliminó correctamente, false si no se pudo eliminar
      */
     public boolean removeAdmin(String username) {
-        if (admins.size() <= 1) {
-            return false; // No permitir eliminar el último administrador
-        }
-        return admins.removeIf(admin -> admin.getUsername().equals(username));
+        // No permitir eliminar el último administrador
+        return admins.remove(username, 1) != null;
     }
 
     /**
@@ -104,10 +110,7 @@ public class AdminManagementService {
      * @return el administrador encontrado o null si no existe
      */
     public Admin findAdminByUsername(String username) {
-        return admins.stream()
-                .filter(admin -> admin.getUsername().equals(username))
-                .findFirst()
-                .orElse(null);
+        return admins.get(username);
     }
 
     /**
@@ -124,8 +127,7 @@ public class AdminManagementService {
      * @return true si el administrador ya existe, false en caso contrario
      */
     public boolean adminExists(String username) {
-        return admins.stream()
-                .anyMatch(admin -> admin.getUsername().equals(username));
+        return admins.contains(username);
     }
 
     /**
@@ -134,6 +136,8 @@ public class AdminManagementService {
      * @return nombre de usuario único para administrador
      */
     private String generateAdminUsername() {
+        List<Admin> admins = this.admins.snapshot();
+        
         // Si no hay administradores o solo está el admin por defecto, empezar con admin1
         if (admins.isEmpty() || (admins.size() == 1 && admins.get(0).getUsername().equals("admin"))) {
             return "admin1";
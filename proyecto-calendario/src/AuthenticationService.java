@@ -1,4 +1,12 @@
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Interface para servicios de autenticación
@@ -14,6 +22,24 @@ interface AuthenticationService {
      */
     User authenticate(String username, String password, String userType);
     
+    /**
+     * Autentica un usuario sin bloquear al llamador
+     * Permite encadenar trabajo posterior (cargar eventos o el muro) mientras se verifica el hash
+     * @param username nombre de usuario
+     * @param password contraseña
+     * @param userType tipo de usuario ("admin" o "user")
+     * @return futuro con el usuario autenticado o null si falla
+     */
+    CompletableFuture<User> authenticateAsync(String username, String password, String userType);
+    
+    /**
+     * Autentica un lote de credenciales de una sola vez
+     * @param credentials lista de credenciales a verificar
+     * @param userType tipo de usuario ("admin" o "user")
+     * @return lista con el usuario autenticado o null para cada entrada, en el mismo orden
+     */
+    List<User> authenticateAll(List<UserInterface.LoginCredentials> credentials, String userType);
+    
     /**
      * Cambia la contraseña de un usuario
      * @param user usuario al que cambiar la contraseña
@@ -22,28 +48,124 @@ interface AuthenticationService {
      * @return true si el cambio fue exitoso, false si no
      */
     boolean changePassword(User user, String newPassword, String confirmPassword);
+    
+    /**
+     * Cambia la contraseña de un usuario sin bloquear al llamador
+     * @param user usuario al que cambiar la contraseña
+     * @param newPassword nueva contraseña
+     * @param confirmPassword confirmación de la nueva contraseña
+     * @return futuro con true si el cambio fue exitoso, false si no
+     */
+    CompletableFuture<Boolean> changePasswordAsync(User user, String newPassword, String confirmPassword);
+    
+    /**
+     * Emite un token de sesión opaco para un usuario ya autenticado
+     * @param user usuario autenticado
+     * @return token de sesión
+     */
+    String issueSession(User user);
+    
+    /**
+     * Valida un token de sesión sin volver a verificar la contraseña
+     * @param token token de sesión
+     * @return el usuario de la sesión o null si el token no es válido o ha expirado
+     */
+    User validate(String token);
+    
+    /**
+     * Cierra una sesión
+     * @param token token de sesión a invalidar
+     */
+    void invalidate(String token);
+    
+    /**
+     * Cierra todas las sesiones abiertas de un usuario
+     * @param username nombre del usuario
+     */
+    void invalidateSessions(String username);
 }
 
 /**
  * Implementación básica del servicio de autenticación
- * Maneja la autenticación contra listas de usuarios y administradores
+ * Maneja la autenticación contra los almacenes de usuarios y administradores
  */
 class BasicAuthenticationService implements AuthenticationService {
-    private final List<User> users;
-    private final List<Admin> admins;
+    private final AccountStore<User> users;
+    private final AccountStore<Admin> admins;
+    private final PasswordVerifier passwordVerifier;
+    private final SessionManager sessionManager;
+    private final Executor asyncExecutor;
+    // Recibe las cuentas cuyo hash se migró al verificar, para guardar el hash nuevo
+    private volatile Consumer<User> rehashListener = user -> { };
+    
+    // Número de verificaciones por debajo del cual una tarea deja de dividirse
+    private static final int BULK_SPLIT_THRESHOLD = 4;
+    // Ejecutor por defecto de las variantes asíncronas: un hilo virtual por tarea si el JDK lo permite
+    private static final ExecutorService DEFAULT_ASYNC_EXECUTOR = VirtualThreadExecutors.newPerTaskExecutor("auth-async");
+
+    /**
+     * Constructor que recibe los almacenes de usuarios y administradores
+     * Usa el verificador de contraseñas compartido del sistema
+     * @param users almacén de usuarios regulares
+     * @param admins almacén de administradores
+     */
+    public BasicAuthenticationService(AccountStore<User> users, AccountStore<Admin> admins) {
+        this(users, admins, PasswordVerifier.getDefault());
+    }
+
+    /**
+     * Constructor que permite indicar el ejecutor acotado para el hash de contraseñas
+     * Las sesiones usan los tiempos de expiración de las propiedades del sistema
+     * @param users almacén de usuarios regulares
+     * @param admins almacén de administradores
+     * @param passwordVerifier ejecutor acotado que calcula los hashes
+     */
+    public BasicAuthenticationService(AccountStore<User> users, AccountStore<Admin> admins,
+                                      PasswordVerifier passwordVerifier) {
+        this(users, admins, passwordVerifier, SessionManager.fromSystemProperties());
+    }
+
+    /**
+     * Constructor que usa el ejecutor asíncrono por defecto (hilos virtuales si el JDK lo permite)
+     * @param users almacén de usuarios regulares
+     * @param admins almacén de administradores
+     * @param passwordVerifier ejecutor acotado que calcula los hashes
+     * @param sessionManager gestor de las sesiones emitidas tras el login
+     */
+    public BasicAuthenticationService(AccountStore<User> users, AccountStore<Admin> admins,
+                                      PasswordVerifier passwordVerifier, SessionManager sessionManager) {
+        this(users, admins, passwordVerifier, sessionManager, DEFAULT_ASYNC_EXECUTOR);
+    }
 
     /**
-     * Constructor que recibe las listas de usuarios y administradores
-     * @param users lista de usuarios regulares
-     * @param admins lista de administradores
+     * Constructor completo
+     * @param users almacén de usuarios regulares
+     * @param admins almacén de administradores
+     * @param passwordVerifier ejecutor acotado que calcula los hashes
+     * @param sessionManager gestor de las sesiones emitidas tras el login
+     * @param asyncExecutor ejecutor en el que esperan las variantes asíncronas
      */
-    public BasicAuthenticationService(List<User> users, List<Admin> admins) {
+    public BasicAuthenticationService(AccountStore<User> users, AccountStore<Admin> admins,
+                                      PasswordVerifier passwordVerifier, SessionManager sessionManager,
+                                      Executor asyncExecutor) {
         this.users = users;
         this.admins = admins;
+        this.passwordVerifier = passwordVerifier;
+        this.sessionManager = sessionManager;
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Indica qué hacer con las cuentas cuyo hash se migra al autenticarse (registros en claro o con
+     * un coste inferior al actual); normalmente registrar un cambio de contraseña en el repositorio
+     * @param rehashListener acción que recibe la cuenta con el hash nuevo
+     */
+    public void setRehashListener(Consumer<User> rehashListener) {
+        this.rehashListener = rehashListener;
     }
 
     /**
-     * Autentica un usuario buscando en la lista correspondiente según el tipo
+     * Autentica un usuario buscando en el almacén correspondiente según el tipo
      * @param username nombre de usuario a autenticar
      * @param password contraseña proporcionada
      * @param userType tipo de usuario ("admin" para administradores, cualquier otra cosa para usuarios)
@@ -56,14 +178,121 @@ class BasicAuthenticationService implements AuthenticationService {
             return null;
         }
 
-        // Seleccionar la lista correcta según el tipo de usuario
-        List<? extends User> targetList = "admin".equalsIgnoreCase(userType) ? admins : users;
-        
-        // Buscar el usuario en la lista correspondiente
-        return targetList.stream()
-                .filter(user -> user.getUsername().equals(username) && user.authenticate(password))
-                .findFirst()
-                .orElse(null);
+        // Buscar el usuario en el almacén correspondiente al tipo (lectura sin bloqueo)
+        User user = storeFor(userType).get(username);
+        if (user == null) {
+            return null;
+        }
+
+        // Verificar el hash en el ejecutor acotado (también migra registros en claro)
+        String stored = user.getPassword();
+        if (!passwordVerifier.verify(user, password)) {
+            return null;
+        }
+        notifyIfRehashed(user, stored);
+        return user;
+    }
+
+    /**
+     * Autentica en el ejecutor asíncrono
+     * El hash se sigue calculando en el ejecutor acotado; el hilo asíncrono solo espera su resultado
+     * @param username nombre de usuario a autenticar
+     * @param password contraseña proporcionada
+     * @param userType tipo de usuario ("admin" o "user")
+     * @return futuro con el usuario autenticado o null si las credenciales no son válidas
+     */
+    @Override
+    public CompletableFuture<User> authenticateAsync(String username, String password, String userType) {
+        return CompletableFuture.supplyAsync(() -> authenticate(username, password, userType), asyncExecutor);
+    }
+
+    /**
+     * Autentica un lote de credenciales
+     * Resuelve todos los nombres de usuario en una sola pasada por el almacén y
+     * después verifica las contraseñas en paralelo en el pool fork-join del verificador acotado,
+     * limitado a sus hilos (nunca tiene más verificaciones en curso que hilos de hash, ni puede
+     * desbordar su cola); cada hash se calcula en el verificador, como en un login normal
+     * @param credentials lista de credenciales a verificar
+     * @param userType tipo de usuario ("admin" para administradores, cualquier otra cosa para usuarios)
+     * @return lista con el usuario autenticado o null para cada entrada, en el orden de entrada
+     */
+    @Override
+    public List<User> authenticateAll(List<UserInterface.LoginCredentials> credentials, String userType) {
+        int size = credentials.size();
+        User[] candidates = new User[size];
+        String[] passwords = new String[size];
+        String[] stored = new String[size];
+
+        // Resolver todos los nombres de usuario en una sola pasada
+        AccountStore<? extends User> store = storeFor(userType);
+        for (int i = 0; i < size; i++) {
+            UserInterface.LoginCredentials entry = credentials.get(i);
+            if (entry == null || entry.username == null || entry.password == null
+                    || entry.username.isEmpty() || entry.password.isEmpty()) {
+                continue;
+            }
+            candidates[i] = store.get(entry.username);
+            passwords[i] = entry.password;
+            stored[i] = candidates[i] == null ? null : candidates[i].getPassword();
+        }
+
+        // Verificar las contraseñas en paralelo; los fallos quedan en null
+        User[] results = Arrays.copyOf(candidates, size);
+        passwordVerifier.getBulkPool().invoke(new BulkVerification(passwordVerifier, results, passwords, 0, size));
+        for (int i = 0; i < size; i++) {
+            if (results[i] != null) {
+                notifyIfRehashed(results[i], stored[i]);
+            }
+        }
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    /**
+     * Avisa si la verificación sustituyó el hash guardado por uno migrado
+     * @param user cuenta verificada
+     * @param stored hash que tenía antes de verificarla
+     */
+    private void notifyIfRehashed(User user, String stored) {
+        if (!user.getPassword().equals(stored)) {
+            rehashListener.accept(user);
+        }
+    }
+
+    /**
+     * Tarea fork-join que verifica un rango del lote y anula las entradas incorrectas
+     * (también las que el verificador rechaza por estar saturado)
+     */
+    private static class BulkVerification extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient PasswordVerifier verifier;
+        private final User[] results;
+        private final String[] passwords;
+        private final int from;
+        private final int to;
+
+        BulkVerification(PasswordVerifier verifier, User[] results, String[] passwords, int from, int to) {
+            this.verifier = verifier;
+            this.results = results;
+            this.passwords = passwords;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BULK_SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    if (results[i] != null && !verifier.verify(results[i], passwords[i])) {
+                        results[i] = null;
+                    }
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BulkVerification(verifier, results, passwords, from, middle),
+                      new BulkVerification(verifier, results, passwords, middle, to));
+        }
     }
 
     /**
@@ -91,10 +320,62 @@ class BasicAuthenticationService implements AuthenticationService {
         }
 
         // Cambiar la contraseña y marcar como no pendiente de cambio
-        user.setPassword(newPassword);
+        if (!passwordVerifier.updatePassword(user, newPassword)) {
+            return false;
+        }
         user.setPasswordResetPending(false);
         return true;
     }
+
+    /**
+     * Cambia la contraseña en el ejecutor asíncrono
+     * @param user usuario al que cambiar la contraseña
+     * @param newPassword nueva contraseña
+     * @param confirmPassword confirmación de la nueva contraseña
+     * @return futuro con true si el cambio fue exitoso
+     */
+    @Override
+    public CompletableFuture<Boolean> changePasswordAsync(User user, String newPassword, String confirmPassword) {
+        return CompletableFuture.supplyAsync(() -> changePassword(user, newPassword, confirmPassword), asyncExecutor);
+    }
+
+    /**
+     * Emite un token de sesión para un usuario autenticado
+     * @param user usuario autenticado
+     * @return token de sesión opaco
+     */
+    @Override
+    public String issueSession(User user) {
+        return sessionManager.issue(user);
+    }
+
+    /**
+     * Valida un token consultando la tabla de sesiones (sin calcular ningún hash)
+     * @param token token de sesión
+     * @return el usuario de la sesión o null si no es válida
+     */
+    @Override
+    public User validate(String token) {
+        return sessionManager.validate(token);
+    }
+
+    /**
+     * Cierra una sesión
+     * @param token token de sesión a invalidar
+     */
+    @Override
+    public void invalidate(String token) {
+        sessionManager.invalidate(token);
+    }
+
+    /**
+     * Cierra todas las sesiones abiertas de un usuario
+     * @param username nombre del usuario
+     */
+    @Override
+    public void invalidateSessions(String username) {
+        sessionManager.invalidateUser(username);
+    }
     
     /**
      * Verifica si un usuario existe en el sistema
@@ -107,10 +388,7 @@ class BasicAuthenticationService implements AuthenticationService {
             return false;
         }
         
-        List<? extends User> targetList = "admin".equalsIgnoreCase(userType) ? admins : users;
-        
-        return targetList.stream()
-                .anyMatch(user -> user.getUsername().equals(username));
+        return storeFor(userType).contains(username);
     }
     
     /**
@@ -124,12 +402,16 @@ class BasicAuthenticationService implements AuthenticationService {
             return null;
         }
         
-        List<? extends User> targetList = "admin".equalsIgnoreCase(userType) ? admins : users;
-        
-        return targetList.stream()
-                .filter(user -> user.getUsername().equals(username))
-                .findFirst()
-                .orElse(null);
+        return storeFor(userType).get(username);
+    }
+    
+    /**
+     * Selecciona el almacén correcto según el tipo de usuario
+     * @param userType tipo de usuario ("admin" o "user")
+     * @return almacén de administradores o de usuarios regulares
+     */
+    private AccountStore<? extends User> storeFor(String userType) {
+        return "admin".equalsIgnoreCase(userType) ? admins : users;
     }
     
     /**
@@ -159,17 +441,30 @@ class BasicAuthenticationService implements AuthenticationService {
         stats.append("Total Users: ").append(users.size()).append("\n");
         stats.append("Total Admins: ").append(admins.size()).append("\n");
         
-        long usersWithPendingReset = users.stream()
-                .mapToLong(user -> user.isPasswordResetPending() ? 1 : 0)
-                .sum();
-        
-        long adminsWithPendingReset = admins.stream()
-                .mapToLong(admin -> admin.isPasswordResetPending() ? 1 : 0)
-                .sum();
+        long usersWithPendingReset = countPendingResets(users);
+        long adminsWithPendingReset = countPendingResets(admins);
         
         stats.append("Users with pending password reset: ").append(usersWithPendingReset).append("\n");
         stats.append("Admins with pending password reset: ").append(adminsWithPendingReset).append("\n");
+        stats.append("Active sessions: ").append(sessionManager.getActiveSessionCount()).append("\n");
+        appendFilterStats(stats, "User", users);
+        appendFilterStats(stats, "Admin", admins);
         
         return stats.toString();
     }
+
+    /**
+     * Cuenta las cuentas con cambio de contraseña pendiente recorriendo el almacén sin copiarlo
+     */
+    private static long countPendingResets(AccountStore<? extends User> store) {
+        try (Stream<? extends User> accounts = store.stream()) {
+            return accounts.filter(User::isPasswordResetPending).count();
+        }
+    }
+
+    private static void appendFilterStats(StringBuilder stats, String label, AccountStore<? extends User> store) {
+        UsernameBloomFilter filter = store.getBloomFilter();
+        stats.append(label).append(" name filter: ").append(filter.getStats())
+             .append(" | unknown names skipped: ").append(store.getFilteredLookupCount()).append("\n");
+    }
 }
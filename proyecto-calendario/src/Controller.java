@@ -1,128 +1,12 @@
 import java.io.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import javax.swing.*;
 import java.awt.*;
-import java.security.SecureRandom;
 
 
 
-/**
- * Implementación de repositorio con archivos
- */
-class FileUserRepository implements UserRepository {
-    private static final String DATA_FILE = "data/userdata.ser";
-
-    @Override
-    public void save(List<User> users, List<Admin> admins, int userCounter) {
-        try {
-            // Crear directorio data si no existe
-            File dataDir = new File("data");
-            if (!dataDir.exists()) {
-                dataDir.mkdirs();
-            }
-            
-            try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(DATA_FILE))) {
-                out.writeObject(users);
-                out.writeObject(admins);
-                out.writeInt(userCounter);
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Error saving data: " + e.getMessage());
-        }
-    }
-
-    @Override
-    @SuppressWarnings("unchecked")
-    public UserData load() {
-        File file = new File(DATA_FILE);
-        if (!file.exists()) {
-            return new UserData(new ArrayList<>(), new ArrayList<>(), 1);
-        }
-
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
-            List<User> users = (List<User>) in.readObject();
-            List<Admin> admins = (List<Admin>) in.readObject();
-            int userCounter = in.readInt();
-            return new UserData(users, admins, userCounter);
-        } catch (IOException | ClassNotFoundException e) {
-            throw new RuntimeException("Error loading data: " + e.getMessage());
-        }
-    }
-}
-
-/**
- * Generador de credenciales secuencial
- */
-class SequentialCredentialGenerator implements CredentialGenerator {
-    private int userCounter;
-    private final SecureRandom random = new SecureRandom();
-
-    public SequentialCredentialGenerator(int initialCounter) {
-        this.userCounter = initialCounter;
-    }
-
-    @Override
-    public String generateUsername() {
-        return String.format("user%03d", userCounter++);
-    }
-
-    @Override
-    public String generatePassword() {
-        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
-        StringBuilder sb = new StringBuilder(8);
-        for (int i = 0; i < 8; i++) {
-            sb.append(chars.charAt(random.nextInt(chars.length())));
-        }
-        return sb.toString();
-    }
-
-    public int getUserCounter() {
-        return userCounter;
-    }
-}
-
-/**
- * Servicio de autenticación básico
- */
-class BasicAuthenticationService implements AuthenticationService {
-    private final List<User> users;
-    private final List<Admin> admins;
-
-    public BasicAuthenticationService(List<User> users, List<Admin> admins) {
-        this.users = users;
-        this.admins = admins;
-    }
-
-    @Override
-    public User authenticate(String username, String password, String userType) {
-        if (username == null || password == null || username.isEmpty() || password.isEmpty()) {
-            return null;
-        }
-
-        List<? extends User> targetList = "admin".equalsIgnoreCase(userType) ? admins : users;
-        
-        return targetList.stream()
-                .filter(user -> user.getUsername().equals(username) && user.authenticate(password))
-                .findFirst()
-                .orElse(null);
-    }
-
-    @Override
-    public boolean changePassword(User user, String newPassword, String confirmPassword) {
-        if (newPassword == null || newPassword.isEmpty()) {
-            return false;
-        }
-        if (!newPassword.equals(confirmPassword)) {
-            return false;
-        }
-
-        user.setPassword(newPassword);
-        user.setPasswordResetPending(false);
-        return true;
-    }
-}
-
 /**
  * Implementación de UI con Swing
  */
@@ -226,20 +110,28 @@ class SwingUserInterface implements UserInterface {
  * Aplica el principio de Inversión de Dependencias usando interfaces
  */
 class Controller {
-    private final List<User> users;
-    private final List<Admin> admins;
+    // Intentos de login permitidos por diálogo antes de volver al menú principal
+    private static final int MAX_LOGIN_ATTEMPTS = 5;
+    // Usuarios por página en el listado del administrador
+    private static final int USER_LIST_PAGE_SIZE = 50;
+    // Opción del diálogo de eliminación que pasa a la siguiente página de usuarios
+    private static final String NEXT_PAGE_OPTION = "Next page >>";
+    
+    private final AccountStore<User> users;
+    private final AccountStore<Admin> admins;
     private final UserRepository userRepository;
     private final AuthenticationService authService;
     private final UserInterface ui;
     private final UserManagementService userService;
     private final AdminManagementService adminService;
     private final SequentialCredentialGenerator credentialGenerator;
+    private final PersistenceScheduler persistence;
 
     /**
      * Constructor por defecto que usa implementaciones concretas
      */
     public Controller() {
-        this(new FileUserRepository(), new SwingUserInterface());
+        this(UserRepository.fromSystemProperties(), new SwingUserInterface());
     }
 
     /**
@@ -251,19 +143,42 @@ class Controller {
         this.userRepository = userRepository;
         this.ui = ui;
         
-        // Cargar datos existentes
-        UserRepository.UserData data = userRepository.load();
-        this.users = data.users;
-        this.admins = data.admins;
+        // Calibrar el coste del hash de contraseñas al arrancar
+        PasswordHasher.getDefault();
+        
+        // Almacenes de cuentas seguros para hilos compartidos por los servicios; si el repositorio
+        // admite búsquedas puntuales los usuarios no se cargan al arrancar
+        UserRepository.AccountLookup lookup = userRepository.lookup();
+        int userCounter;
+        if (lookup != null) {
+            this.users = AccountStore.lazy(lookup::findUser, userRepository::streamUsers, userRepository.count());
+            this.admins = new AccountStore<>(lookup.loadAdmins());
+            userCounter = lookup.getUserCounter();
+        } else {
+            UserRepository.UserData data = userRepository.load();
+            this.users = new AccountStore<>(data.users);
+            this.admins = new AccountStore<>(data.admins);
+            userCounter = data.userCounter;
+        }
         
         // Inicializar servicios
-        this.credentialGenerator = new SequentialCredentialGenerator(data.userCounter);
-        this.authService = new BasicAuthenticationService(users, admins);
+        this.credentialGenerator = new SequentialCredentialGenerator(userCounter);
+        BasicAuthenticationService basicAuthService = new BasicAuthenticationService(users, admins);
+        // Un registro en claro o con coste antiguo se migra al iniciar sesión: el hash nuevo se
+        // registra como cambio de contraseña para que el antiguo no quede en disco
+        basicAuthService.setRehashListener(user -> persist(UserRepository.Mutation.passwordChange(user)));
+        this.authService = new ThrottledAuthenticationService(basicAuthService, LoginThrottle.fromSystemProperties());
         this.userService = new UserManagementService(users, credentialGenerator);
         this.adminService = new AdminManagementService(admins);
+        this.persistence = PersistenceScheduler.fromSystemProperties(userRepository,
+                () -> new UserRepository.UserData(users.snapshot(), admins.snapshot(),
+                        credentialGenerator.getUserCounter()));
         
         // Asegurar que existe al menos un admin por defecto
-        adminService.ensureDefaultAdmin();
+        Admin defaultAdmin = adminService.ensureDefaultAdmin();
+        if (defaultAdmin != null) {
+            persist(UserRepository.Mutation.create(defaultAdmin));
+        }
     }
 
     /**
@@ -294,6 +209,30 @@ class Controller {
         }
     }
 
+    /**
+     * Inicia la aplicación en modo sin interfaz gráfica
+     * Expone la autenticación y la administración por HTTP en la interfaz local
+     * @param port puerto TCP en el que escuchar
+     * @throws IOException si no se puede abrir el puerto
+     */
+    public void startHeadless(int port) throws IOException {
+        SocialCalendarApp.loadMuro();
+        
+        HeadlessAuthServer server = new HeadlessAuthServer(authService, userService, adminService,
+                this::persist, this::deleteUserData);
+        server.start(port);
+        
+        // Guardar los datos y cerrar el servidor al terminar el proceso
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            saveData();
+            System.out.println(persistence.getStats());
+        }, "headless-shutdown"));
+        
+        System.out.println("Headless auth server listening on http://localhost:" + server.getPort()
+                + (VirtualThreadExecutors.isVirtualThreadAvailable() ? " (virtual threads)" : " (platform threads)"));
+    }
+
     /**
      * Maneja el proceso de login para administradores
      */
@@ -311,8 +250,13 @@ class Controller {
             }
         }
         
-        // Mostrar menú de administrador
-        showAdminMenu((Admin) admin);
+        // Registrar la sesión y mostrar menú de administrador
+        String sessionToken = authService.issueSession(admin);
+        try {
+            showAdminMenu((Admin) admin);
+        } finally {
+            authService.invalidate(sessionToken);
+        }
     }
 
     /**
@@ -332,9 +276,14 @@ class Controller {
             }
         }
 
-        // Lanzar aplicación de calendario social
-        SocialCalendarApp calendarApp = new SocialCalendarApp(user);
-        calendarApp.start();
+        // Registrar la sesión y lanzar aplicación de calendario social
+        String sessionToken = authService.issueSession(user);
+        try {
+            SocialCalendarApp calendarApp = new SocialCalendarApp(user);
+            calendarApp.start();
+        } finally {
+            authService.invalidate(sessionToken);
+        }
     }
 
     /**
@@ -343,7 +292,7 @@ class Controller {
      * @return el usuario autenticado o null si falla
      */
     private User performLogin(String userType) {
-        while (true) {
+        for (int attempt = 1; attempt <= MAX_LOGIN_ATTEMPTS; attempt++) {
             UserInterface.LoginCredentials credentials = ui.showLoginDialog();
             if (credentials == null) return null;
 
@@ -353,14 +302,22 @@ class Controller {
                 continue;
             }
 
-            // Intentar autenticar
-            User user = authService.authenticate(credentials.username, credentials.password, userType);
+            // Intentar autenticar; mientras se verifica el hash se precarga el muro del calendario
+            CompletableFuture<User> pending = authService.authenticateAsync(
+                    credentials.username, credentials.password, userType);
+            if (!"admin".equalsIgnoreCase(userType)) {
+                SocialCalendarApp.loadMuro();
+            }
+            User user = pending.join();
             if (user != null) {
                 return user;
-            } else {
+            } else if (attempt < MAX_LOGIN_ATTEMPTS) {
                 ui.showMessage("Invalid username or password. Please try again.");
             }
         }
+        
+        ui.showMessage("Too many failed login attempts. Please try again later.");
+        return null;
     }
 
     /**
@@ -373,6 +330,7 @@ class Controller {
         if (newPassword == null) return false;
 
         if (authService.changePassword(user, newPassword, newPassword)) {
+            persist(UserRepository.Mutation.passwordChange(user));
             ui.showMessage("Password changed successfully!");
             return true;
         } else {
@@ -389,9 +347,8 @@ class Controller {
         while (true) {
             int choice = ui.showAdminMenu(admin.getUsername());
 
-            // Logout
+            // Logout (cada cambio ya se registró al hacerlo)
             if (choice == -1 || choice == 4) {
-                saveData();
                 return;
             }
 
@@ -400,7 +357,7 @@ class Controller {
                     handleCreateUser();
                     break;
                 case 1: // Listar usuarios
-                    ui.showMessage(userService.getUserListString());
+                    handleListUsers();
                     break;
                 case 2: // Eliminar usuario
                     handleRemoveUser();
@@ -412,14 +369,33 @@ class Controller {
         }
     }
 
+    /**
+     * Muestra el listado de usuarios por páginas, leyendo cada página al pedirla
+     */
+    private void handleListUsers() {
+        int total = userService.getUserCount();
+        int offset = 0;
+        while (true) {
+            String page = userService.getUserListString(offset, USER_LIST_PAGE_SIZE, total);
+            offset += USER_LIST_PAGE_SIZE;
+            if (offset >= total) {
+                ui.showMessage(page);
+                return;
+            }
+            if (!ui.showConfirmDialog(page + "\n\nShow next page?")) {
+                return;
+            }
+        }
+    }
+
     /**
      * Maneja la creación de un nuevo usuario
      */
     private void handleCreateUser() {
         User newUser = userService.createUser();
         ui.showMessage("New user created!\nUsername: " + newUser.getUsername() +
-                      "\nPassword: " + newUser.getPassword());
-        saveData();
+                      "\nPassword: " + newUser.getProvisionalPassword());
+        persist(UserRepository.Mutation.create(newUser));
     }
 
     /**
@@ -431,17 +407,34 @@ class Controller {
             return;
         }
 
-        String[] usernames = userService.getUsernames();
-        String userToRemove = ui.showUserSelectionDialog(usernames);
-        
-        if (userToRemove == null) return;
+        // Se piden los nombres página a página; uno de más indica si hay otra página
+        String userToRemove = null;
+        int offset = 0;
+        while (userToRemove == null) {
+            String[] usernames = userService.getUsernames(offset, USER_LIST_PAGE_SIZE + 1);
+            if (usernames.length == 0) {
+                ui.showMessage("No users to remove.");
+                return;
+            }
+            if (usernames.length > USER_LIST_PAGE_SIZE) {
+                usernames[USER_LIST_PAGE_SIZE] = NEXT_PAGE_OPTION;
+            }
+            String selected = ui.showUserSelectionDialog(usernames);
+            if (selected == null) return;
+            if (selected.equals(NEXT_PAGE_OPTION) && usernames.length > USER_LIST_PAGE_SIZE) {
+                offset += USER_LIST_PAGE_SIZE;
+            } else {
+                userToRemove = selected;
+            }
+        }
 
         boolean confirmed = ui.showConfirmDialog(
             "Delete user '" + userToRemove + "'?\nThis will delete all events and wall posts.");
 
         if (confirmed) {
             userService.removeUser(userToRemove);
-            saveData();
+            authService.invalidateSessions(userToRemove);
+            persist(UserRepository.Mutation.remove(userToRemove, false));
             
             // Eliminar datos del usuario del muro y archivos
             deleteUserData(userToRemove);
@@ -458,7 +451,7 @@ class Controller {
         ui.showMessage("New admin account created!\nUsername: " + newAdmin.getUsername() +
                       "\nProvisional password: admin123" +
                       "\nThe new admin will be required to set a new password on first login.");
-        saveData();
+        persist(UserRepository.Mutation.create(newAdmin));
     }
 
     /**
@@ -467,8 +460,7 @@ class Controller {
      */
     private void deleteUserData(String username) {
         // Eliminar publicaciones del muro
-        SocialCalendarApp.muro.removeIf(publicacion -> publicacion.getUsuario().equals(username));
-        SocialCalendarApp.saveMuro();
+        MuroCache.getInstance().removeByUser(username);
         
         // Eliminar archivo de eventos del usuario
         String eventoFile = "data/eventos_" + username + ".txt";
@@ -479,9 +471,28 @@ class Controller {
     }
 
     /**
-     * Guarda todos los datos en el repositorio
+     * Espera a que todas las mutaciones encoladas estén escritas
+     * Con registro incremental no hace falta reescribir el estado completo (con el repositorio
+     * mapeado o JDBC supondría leer y reescribir todas las cuentas); sin él se pide un guardado
+     * completo, que pasa por el planificador para no coincidir con una escritura en curso
      */
     private void saveData() {
-        userRepository.save(users, admins, credentialGenerator.getUserCounter());
+        if (!userRepository.supportsAppend()) {
+            persistence.markDirty();
+        }
+        persistence.flush();
+    }
+
+    /**
+     * Encola una mutación individual para la próxima escritura agrupada; no espera al disco
+     * El alta de un usuario regular registra también el avance del contador de nombres
+     * Si el repositorio no admite registro incremental el planificador guarda el estado completo
+     * @param mutation mutación a registrar
+     */
+    private void persist(UserRepository.Mutation mutation) {
+        persistence.submit(mutation);
+        if (mutation.type == UserRepository.Mutation.Type.CREATE && !mutation.admin) {
+            persistence.submit(UserRepository.Mutation.counter(credentialGenerator.getUserCounter()));
+        }
     }
 }
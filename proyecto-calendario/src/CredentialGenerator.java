@@ -1,4 +1,5 @@
 import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Interface para generación de credenciales
@@ -24,7 +25,8 @@ interface CredentialGenerator {
  * Las contraseñas son aleatorias de 8 caracteres alfanuméricos
  */
 class SequentialCredentialGenerator implements CredentialGenerator {
-    private int userCounter;
+    // Atómico para que altas concurrentes nunca reciban el mismo número
+    private final AtomicInteger userCounter;
     private final SecureRandom random = new SecureRandom();
     
     // Caracteres permitidos para las contraseñas generadas
@@ -36,7 +38,7 @@ class SequentialCredentialGenerator implements CredentialGenerator {
      * @param initialCounter valor inicial del contador (normalmente 1)
      */
     public SequentialCredentialGenerator(int initialCounter) {
-        this.userCounter = initialCounter;
+        this.userCounter = new AtomicInteger(initialCounter);
     }
 
     /**
@@ -45,7 +47,7 @@ class SequentialCredentialGenerator implements CredentialGenerator {
      */
     @Override
     public String generateUsername() {
-        return String.format("user%03d", userCounter++);
+        return String.format("user%03d", userCounter.getAndIncrement());
     }
 
     /**
@@ -79,7 +81,7 @@ class SequentialCredentialGenerator implements CredentialGenerator {
      * @return contador actual (próximo número a usar)
      */
     public int getUserCounter() {
-        return userCounter;
+        return userCounter.get();
     }
     
     /**
@@ -90,7 +92,7 @@ class SequentialCredentialGenerator implements CredentialGenerator {
         if (userCounter < 1) {
             throw new IllegalArgumentException("User counter must be at least 1");
         }
-        this.userCounter = userCounter;
+        this.userCounter.set(userCounter);
     }
     
     /**
@@ -102,7 +104,7 @@ class SequentialCredentialGenerator implements CredentialGenerator {
         if (prefix == null || prefix.trim().isEmpty()) {
             return generateUsername();
         }
-        return String.format("%s%03d", prefix.trim(), userCounter++);
+        return String.format("%s%03d", prefix.trim(), userCounter.getAndIncrement());
     }
     
     /**
@@ -217,7 +219,7 @@ class SequentialCredentialGenerator implements CredentialGenerator {
      * Resetea el contador a su valor inicial
      */
     public void resetCounter() {
-        this.userCounter = 1;
+        this.userCounter.set(1);
     }
     
     /**
@@ -225,6 +227,6 @@ class SequentialCredentialGenerator implements CredentialGenerator {
      * @return información del generador
      */
     public String getGeneratorInfo() {
-        return String.format("SequentialCredentialGenerator - Next user number: %d", userCounter);
+        return String.format("SequentialCredentialGenerator - Next user number: %d", userCounter.get());
     }
 }
@@ -0,0 +1,420 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Implementación de repositorio con archivos
+ * El estado se guarda como un snapshot completo en formato binario (data/userdata.bin, ver UserRecordCodec) más un registro de mutaciones
+ * (data/userdata.wal) al que cada alta, baja o cambio de contraseña se añade en O(1)
+ * Al cargar se reproduce el registro sobre el snapshot; un hilo de mantenimiento compacta el
+ * registro en un snapshot nuevo cuando supera un tamaño y, con la política INTERVAL, lo sincroniza con el disco
+ * Con varios shards el snapshot se reparte por nombre de usuario (ver UserSnapshotStore) y la
+ * compactación solo reescribe los shards de las cuentas modificadas
+ *
+ * Configuración: -Duserauth.wal.fsync=always|interval|never (interval), -Duserauth.wal.fsyncMillis (1000),
+ * -Duserauth.wal.compactBytes (1 MiB), -Duserauth.wal.compactSeconds (30), -Duserauth.shards (1)
+ */
+class FileUserRepository implements UserRepository {
+    private static final String LOG_FILE = "data/userdata.wal";
+    // Registro apartado mientras se compacta; si existe al arrancar, la compactación se cortó
+    private static final String COMPACTING_LOG_FILE = "data/userdata.wal.compacting";
+
+    private final UserMutationLog.FsyncPolicy fsyncPolicy;
+    private final long compactThresholdBytes;
+    private final UserSnapshotStore snapshots;
+    // Serializa la escritura del snapshot entre save y la compactación en segundo plano
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+
+    private volatile UserMutationLog log;
+    private ScheduledExecutorService maintenance;
+
+    /**
+     * Constructor que lee la política de sincronización y el umbral de compactación de las propiedades del sistema
+     */
+    public FileUserRepository() {
+        this(UserMutationLog.FsyncPolicy.valueOf(
+                     System.getProperty("userauth.wal.fsync", "interval").toUpperCase(Locale.ROOT)),
+             Long.getLong("userauth.wal.compactBytes", 1024 * 1024),
+             Integer.getInteger("userauth.shards", 1));
+    }
+
+    /**
+     * Constructor con la política de sincronización y el umbral de compactación explícitos
+     * @param fsyncPolicy cuándo se fuerza el registro al disco
+     * @param compactThresholdBytes tamaño del registro a partir del cual se compacta
+     */
+    public FileUserRepository(UserMutationLog.FsyncPolicy fsyncPolicy, long compactThresholdBytes) {
+        this(fsyncPolicy, compactThresholdBytes, 1);
+    }
+
+    /**
+     * Constructor con el número de shards del snapshot
+     * @param fsyncPolicy cuándo se fuerza el registro al disco
+     * @param compactThresholdBytes tamaño del registro a partir del cual se compacta
+     * @param shardCount número de shards (1 para el archivo único data/userdata.bin)
+     */
+    public FileUserRepository(UserMutationLog.FsyncPolicy fsyncPolicy, long compactThresholdBytes, int shardCount) {
+        this.fsyncPolicy = fsyncPolicy;
+        this.compactThresholdBytes = compactThresholdBytes;
+        this.snapshots = new UserSnapshotStore(shardCount);
+    }
+
+    /**
+     * Crea un repositorio con el número de shards de los datos existentes, sea cual sea la configuración
+     * Lo usan las migraciones a otros repositorios
+     * @return repositorio que lee los datos actuales
+     */
+    static FileUserRepository forExistingData() {
+        try {
+            return new FileUserRepository(UserMutationLog.FsyncPolicy.INTERVAL, Long.MAX_VALUE,
+                    UserSnapshotStore.existingShardCount());
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Guarda el estado completo como snapshot y vacía el registro de mutaciones
+     * El llamador no debe registrar mutaciones mientras se guarda (el controlador serializa ambas operaciones)
+     */
+    @Override
+    public void save(List<User> users, List<Admin> admins, int userCounter) {
+        snapshotLock.lock();
+        try {
+            snapshots.write(new UserData(users, admins, userCounter));
+            Files.deleteIfExists(Paths.get(COMPACTING_LOG_FILE));
+            openLog().reset();
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving data: " + e.getMessage());
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    @Override
+    public UserData load() {
+        snapshotLock.lock();
+        try {
+            Replay replay = new Replay(snapshots.read());
+            UserMutationLog.replay(Paths.get(COMPACTING_LOG_FILE), replay::apply);
+            UserMutationLog.replay(Paths.get(LOG_FILE), replay::apply);
+            openLog();
+            return replay.toUserData();
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading data: " + e.getMessage());
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Este repositorio registra cada mutación sin reescribir el estado completo
+     * @return siempre true
+     */
+    @Override
+    public boolean supportsAppend() {
+        return true;
+    }
+
+    /**
+     * Añade la mutación al registro sin reescribir el snapshot
+     * @param mutation mutación a registrar
+     * @return siempre true: este repositorio tiene registro incremental
+     */
+    @Override
+    public boolean append(Mutation mutation) {
+        try {
+            openLog().append(mutation);
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Añade un lote de mutaciones al registro con una sola escritura
+     * @param mutations mutaciones a registrar, en orden
+     * @return siempre true: este repositorio tiene registro incremental
+     */
+    @Override
+    public boolean appendAll(List<Mutation> mutations) {
+        try {
+            openLog().appendAll(mutations);
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Recorre los usuarios leyendo el snapshot registro a registro
+     * Solo el registro de mutaciones (acotado por la compactación) se lee entero al empezar,
+     * para aplicar sus altas, bajas y cambios sobre la marcha
+     * @return stream de usuarios regulares en orden de alta; cerrarlo libera el archivo
+     */
+    @Override
+    public Stream<User> streamUsers() {
+        snapshotLock.lock();
+        try {
+            // Snapshot y registro se capturan juntos: una compactación posterior no afecta al recorrido
+            Overlay overlay = new Overlay();
+            UserMutationLog.replay(Paths.get(COMPACTING_LOG_FILE), overlay::apply);
+            UserMutationLog.replay(Paths.get(LOG_FILE), overlay::apply);
+
+            UserSnapshotStore.UserIterator stored = snapshots.openUsers();
+            return overlay.merge(stored, () -> {
+                try {
+                    stored.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading data: " + e.getMessage());
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Incorpora el registro de mutaciones a un snapshot nuevo
+     * El registro se aparta con otro nombre para que las mutaciones siguientes no esperen a la compactación
+     * @throws IOException si no se puede leer o escribir algún archivo
+     */
+    public void compact() throws IOException {
+        snapshotLock.lock();
+        try {
+            Path compacting = Paths.get(COMPACTING_LOG_FILE);
+            // Un registro apartado que sigue ahí es de una compactación cortada: se incorpora primero
+            if (!Files.exists(compacting)) {
+                if (openLog().isEmpty()) {
+                    return;
+                }
+                openLog().rotateTo(compacting);
+            }
+
+            // Con shards solo se reescriben los de las cuentas que aparecen en el registro
+            List<Mutation> mutations = new ArrayList<>();
+            UserMutationLog.replay(compacting, mutations::add);
+            snapshots.apply(mutations);
+            Files.delete(compacting);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Abre el registro y arranca el hilo de mantenimiento la primera vez
+     */
+    private synchronized UserMutationLog openLog() throws IOException {
+        if (log == null) {
+            new File("data").mkdirs();
+            log = new UserMutationLog(Paths.get(LOG_FILE), fsyncPolicy);
+            startMaintenance();
+        }
+        return log;
+    }
+
+    private void startMaintenance() {
+        maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-wal-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (fsyncPolicy == UserMutationLog.FsyncPolicy.INTERVAL) {
+            long fsyncMillis = Long.getLong("userauth.wal.fsyncMillis", 1000);
+            maintenance.scheduleWithFixedDelay(() -> {
+                try {
+                    log.forceIfDirty();
+                } catch (IOException e) {
+                    System.err.println("Error syncing user log: " + e.getMessage());
+                }
+            }, fsyncMillis, fsyncMillis, TimeUnit.MILLISECONDS);
+        }
+
+        long compactSeconds = Long.getLong("userauth.wal.compactSeconds", 30);
+        maintenance.scheduleWithFixedDelay(() -> {
+            try {
+                if (log.size() >= compactThresholdBytes || Files.exists(Paths.get(COMPACTING_LOG_FILE))) {
+                    compact();
+                }
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Error compacting user log: " + e.getMessage());
+            }
+        }, compactSeconds, compactSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Efecto neto del registro de mutaciones sobre los usuarios regulares, para aplicarlo
+     * mientras se recorre el snapshot sin reconstruir el estado completo
+     */
+    private static final class Overlay {
+        // Altas del registro con su último estado, en orden de alta
+        private final Map<String, User> created = new LinkedHashMap<>();
+        // Cambios de contraseña sobre usuarios que ya estaban en el snapshot
+        private final Map<String, User> changed = new HashMap<>();
+        private final Set<String> removed = new HashSet<>();
+
+        void apply(Mutation mutation) {
+            if (mutation.admin || mutation.username == null) {
+                return;
+            }
+            String username = mutation.username;
+            User account = new User(username, mutation.passwordHash, mutation.passwordResetPending);
+            switch (mutation.type) {
+                case CREATE:
+                    removed.remove(username);
+                    changed.remove(username);
+                    created.put(username, account);
+                    break;
+                case PASSWORD_CHANGE:
+                    if (created.containsKey(username)) {
+                        created.put(username, account);
+                    } else if (!removed.contains(username)) {
+                        changed.put(username, account);
+                    }
+                    break;
+                case REMOVE:
+                    created.remove(username);
+                    changed.remove(username);
+                    removed.add(username);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Combina los usuarios del snapshot con el registro: las cuentas cambiadas se sustituyen,
+         * las eliminadas se omiten y las altas que no estaban en el snapshot se añaden al final
+         */
+        Stream<User> merge(Iterator<User> snapshot, Runnable onClose) {
+            Map<String, User> pending = new LinkedHashMap<>(created);
+            Iterator<User> merged = new Iterator<User>() {
+                private User next;
+                private Iterator<User> tail;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null) {
+                        if (tail == null && snapshot.hasNext()) {
+                            User stored = snapshot.next();
+                            String username = stored.getUsername();
+                            User recreated = pending.remove(username);
+                            if (recreated != null) {
+                                next = recreated;
+                            } else if (!removed.contains(username)) {
+                                next = changed.getOrDefault(username, stored);
+                            }
+                        } else {
+                            if (tail == null) {
+                                tail = pending.values().iterator();
+                            }
+                            if (!tail.hasNext()) {
+                                return false;
+                            }
+                            next = tail.next();
+                        }
+                    }
+                    return true;
+                }
+
+                @Override
+                public User next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    User result = next;
+                    next = null;
+                    return result;
+                }
+            };
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged,
+                    Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(() -> {
+                try {
+                    onClose.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Error closing user data: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Estado reconstruido aplicando mutaciones en orden sobre un snapshot
+     * Cada mutación fija el valor final de una cuenta (o la elimina), así que volver a aplicar
+     * un registro ya incorporado al snapshot no cambia el resultado
+     */
+    static final class Replay {
+        private final Map<String, User> users = new LinkedHashMap<>();
+        private final Map<String, Admin> admins = new LinkedHashMap<>();
+        private int userCounter;
+
+        Replay(UserData base) {
+            for (User user : base.users) {
+                users.put(user.getUsername(), user);
+            }
+            for (Admin admin : base.admins) {
+                admins.put(admin.getUsername(), admin);
+            }
+            userCounter = base.userCounter;
+        }
+
+        void apply(Mutation mutation) {
+            switch (mutation.type) {
+                case CREATE:
+                    if (mutation.admin) {
+                        admins.put(mutation.username, new Admin(mutation.username,
+                                mutation.passwordHash, mutation.passwordResetPending));
+                    } else {
+                        users.put(mutation.username, new User(mutation.username,
+                                mutation.passwordHash, mutation.passwordResetPending));
+                    }
+                    break;
+                case PASSWORD_CHANGE:
+                    // Solo sobre cuentas que existen: un cambio nunca resucita una cuenta eliminada
+                    if (mutation.admin) {
+                        admins.replace(mutation.username, new Admin(mutation.username,
+                                mutation.passwordHash, mutation.passwordResetPending));
+                    } else {
+                        users.replace(mutation.username, new User(mutation.username,
+                                mutation.passwordHash, mutation.passwordResetPending));
+                    }
+                    break;
+                case REMOVE:
+                    (mutation.admin ? admins : users).remove(mutation.username);
+                    break;
+                case COUNTER:
+                    // El contador solo avanza
+                    userCounter = Math.max(userCounter, mutation.userCounter);
+                    break;
+            }
+        }
+
+        UserData toUserData() {
+            return new UserData(new ArrayList<>(users.values()), new ArrayList<>(admins.values()), userCounter);
+        }
+    }
+}
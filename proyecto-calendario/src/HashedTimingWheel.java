@@ -0,0 +1,117 @@
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Rueda de temporización con hash para vencimientos masivos
+ * Cada clave programada cae en la ranura (tick mod tamaño) y un único hilo
+ * avanza la rueda, en lugar de mantener un temporizador por clave
+ * El vencimiento puede llegar con hasta un tick de retraso; quien lo necesite exacto debe comprobarlo al usarlo
+ */
+class HashedTimingWheel {
+    private final long tickMillis;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Timeout>[] buckets;
+    private final long startMillis;
+    private final Consumer<String> expiryHandler;
+    private final ScheduledExecutorService ticker;
+    private volatile long currentTick;
+
+    /**
+     * Constructor de la rueda
+     * @param tickMillis duración de cada tick en milisegundos
+     * @param wheelSize número de ranuras (se redondea a potencia de dos)
+     * @param expiryHandler acción que recibe cada clave vencida
+     */
+    public HashedTimingWheel(long tickMillis, int wheelSize, Consumer<String> expiryHandler) {
+        if (tickMillis < 1 || wheelSize < 1) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(2, wheelSize - 1) << 1);
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        @SuppressWarnings("unchecked")
+        ConcurrentLinkedQueue<Timeout>[] slots = (ConcurrentLinkedQueue<Timeout>[]) new ConcurrentLinkedQueue<?>[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.buckets = slots;
+        this.startMillis = System.currentTimeMillis();
+        this.expiryHandler = expiryHandler;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "timing-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Programa el vencimiento de una clave
+     * Si la rueda pasó por la ranura mientras se encolaba, la entrada se retira y se mueve al tick
+     * siguiente; de lo contrario esperaría una vuelta entera
+     * @param key clave a vencer
+     * @param deadlineMillis instante de vencimiento (epoch en milisegundos)
+     */
+    public void schedule(String key, long deadlineMillis) {
+        long tick = Math.max(currentTick + 1, (deadlineMillis - startMillis + tickMillis - 1) / tickMillis);
+        while (true) {
+            ConcurrentLinkedQueue<Timeout> bucket = buckets[(int) (tick & mask)];
+            Timeout timeout = new Timeout(key, tick);
+            bucket.add(timeout);
+            // advance publica el tick antes de recorrer su ranura: si aún no llegó, la verá
+            long reached = currentTick;
+            if (reached < tick || !bucket.remove(timeout)) {
+                return;
+            }
+            tick = reached + 1;
+        }
+    }
+
+    /**
+     * Detiene el hilo que avanza la rueda
+     */
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Avanza la rueda hasta el tick actual y vence las claves de cada ranura recorrida
+     */
+    private void advance() {
+        long targetTick = (System.currentTimeMillis() - startMillis) / tickMillis;
+        while (currentTick < targetTick) {
+            long tick = currentTick + 1;
+            currentTick = tick;
+
+            Iterator<Timeout> it = buckets[(int) (tick & mask)].iterator();
+            while (it.hasNext()) {
+                Timeout timeout = it.next();
+                if (timeout.tick <= tick) {
+                    it.remove();
+                    try {
+                        expiryHandler.accept(timeout.key);
+                    } catch (RuntimeException e) {
+                        System.err.println("Error expiring " + timeout.key + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Entrada programada en una ranura de la rueda
+     */
+    private static final class Timeout {
+        final String key;
+        final long tick;
+
+        Timeout(String key, long tick) {
+            this.key = key;
+            this.tick = tick;
+        }
+    }
+}
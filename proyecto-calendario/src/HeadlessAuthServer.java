@@ -0,0 +1,324 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * Servidor HTTP local sin interfaz gráfica para los servicios de autenticación y administración
+ * Usa el servidor HTTP del JDK, solo escucha en la interfaz de loopback y atiende cada petición en su propio hilo
+ *
+ * Endpoints (parámetros de POST solo en el cuerpo application/x-www-form-urlencoded, para que las
+ * contraseñas no queden en URLs ni en registros de acceso; los de GET y DELETE, en la query string):
+ *   POST   /login          username, password, type (user|admin) -> token de sesión
+ *   POST   /logout         cierra la sesión del token Bearer
+ *   GET    /session        usuario de la sesión del token Bearer
+ *   POST   /password       newPassword, confirmPassword para el usuario de la sesión
+ *   GET    /admin/users    offset, limit (por defecto 0 y 100), página del listado de usuarios
+ *                          (requiere sesión de administrador)
+ *   POST   /admin/users    crea un usuario
+ *   DELETE /admin/users    username, elimina un usuario y sus datos
+ *   POST   /admin/admins   crea un administrador
+ *
+ * Mientras la cuenta tenga un cambio de contraseña pendiente (como el administrador por defecto),
+ * su token solo sirve para /password y /logout, igual que la interfaz gráfica obliga a cambiarla
+ * antes de mostrar ningún menú
+ */
+class HeadlessAuthServer {
+    // Tamaño de página del listado de usuarios
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final Response PASSWORD_CHANGE_REQUIRED =
+            new Response(403, "Password change required: POST /password before using this session.");
+
+    private final AuthenticationService authService;
+    private final UserManagementService userService;
+    private final AdminManagementService adminService;
+    private final Consumer<UserRepository.Mutation> persistAction;
+    private final Consumer<String> userRemovedAction;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Constructor del servidor
+     * @param authService servicio de autenticación
+     * @param userService servicio de gestión de usuarios
+     * @param adminService servicio de gestión de administradores
+     * @param persistAction acción que registra cada mutación de las cuentas
+     * @param userRemovedAction acción que elimina los datos asociados a un usuario borrado
+     */
+    public HeadlessAuthServer(AuthenticationService authService, UserManagementService userService,
+                              AdminManagementService adminService,
+                              Consumer<UserRepository.Mutation> persistAction,
+                              Consumer<String> userRemovedAction) {
+        this.authService = authService;
+        this.userService = userService;
+        this.adminService = adminService;
+        this.persistAction = persistAction;
+        this.userRemovedAction = userRemovedAction;
+    }
+
+    /**
+     * Arranca el servidor en el puerto indicado de la interfaz de loopback
+     * @param port puerto TCP (0 para uno libre)
+     * @throws IOException si no se puede abrir el puerto
+     */
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        executor = VirtualThreadExecutors.newPerTaskExecutor("http-auth");
+        server.setExecutor(executor);
+
+        server.createContext("/login", exchange -> handle(exchange, "POST", this::login));
+        server.createContext("/logout", exchange -> handle(exchange, "POST", this::logout));
+        server.createContext("/session", exchange -> handle(exchange, "GET", this::session));
+        server.createContext("/password", exchange -> handle(exchange, "POST", this::changePassword));
+        server.createContext("/admin/users", this::adminUsers);
+        server.createContext("/admin/admins", exchange -> handle(exchange, "POST", this::createAdmin));
+        server.start();
+    }
+
+    /**
+     * Detiene el servidor esperando como máximo el tiempo indicado a las peticiones en curso
+     * @param delaySeconds segundos de espera
+     */
+    public void stop(int delaySeconds) {
+        if (server != null) {
+            server.stop(delaySeconds);
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Obtiene el puerto en el que escucha el servidor
+     * @return puerto TCP
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private Response login(HttpExchange exchange, Map<String, String> params) {
+        String username = params.get("username");
+        String password = params.get("password");
+        String type = params.getOrDefault("type", "user");
+
+        User user = authService.authenticate(username, password, type);
+        if (user == null) {
+            return new Response(401, "Invalid username or password.");
+        }
+
+        String token = authService.issueSession(user);
+        return new Response(200, "token=" + token + "\nusername=" + user.getUsername()
+                + "\npasswordResetPending=" + user.isPasswordResetPending());
+    }
+
+    private Response logout(HttpExchange exchange, Map<String, String> params) {
+        authService.invalidate(bearerToken(exchange));
+        return new Response(200, "Logged out.");
+    }
+
+    private Response session(HttpExchange exchange, Map<String, String> params) {
+        User user = authService.validate(bearerToken(exchange));
+        if (user == null) {
+            return new Response(401, "Invalid or expired session.");
+        }
+        if (user.isPasswordResetPending()) {
+            return PASSWORD_CHANGE_REQUIRED;
+        }
+        return new Response(200, "username=" + user.getUsername() + "\nadmin=" + (user instanceof Admin));
+    }
+
+    private Response changePassword(HttpExchange exchange, Map<String, String> params) {
+        User user = authService.validate(bearerToken(exchange));
+        if (user == null) {
+            return new Response(401, "Invalid or expired session.");
+        }
+        if (!authService.changePassword(user, params.get("newPassword"), params.get("confirmPassword"))) {
+            return new Response(400, "Password change failed.");
+        }
+        persistAction.accept(UserRepository.Mutation.passwordChange(user));
+        return new Response(200, "Password changed successfully!");
+    }
+
+    private void adminUsers(HttpExchange exchange) throws IOException {
+        switch (exchange.getRequestMethod()) {
+            case "GET":
+                handle(exchange, "GET", this::listUsers);
+                break;
+            case "POST":
+                handle(exchange, "POST", this::createUser);
+                break;
+            case "DELETE":
+                handle(exchange, "DELETE", this::removeUser);
+                break;
+            default:
+                send(exchange, new Response(405, "Method not allowed."));
+        }
+    }
+
+    private Response listUsers(HttpExchange exchange, Map<String, String> params) {
+        Response denied = requireAdminSession(exchange);
+        if (denied != null) {
+            return denied;
+        }
+        int offset;
+        int limit;
+        try {
+            offset = Integer.parseInt(params.getOrDefault("offset", "0"));
+            limit = Integer.parseInt(params.getOrDefault("limit", String.valueOf(DEFAULT_PAGE_SIZE)));
+        } catch (NumberFormatException e) {
+            return new Response(400, "Offset and limit must be numbers.");
+        }
+        if (offset < 0 || limit < 1 || limit > MAX_PAGE_SIZE) {
+            return new Response(400, "Offset must be >= 0 and limit between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        return new Response(200, userService.getUserListString(offset, limit, userService.getUserCount()));
+    }
+
+    private Response createUser(HttpExchange exchange, Map<String, String> params) {
+        Response denied = requireAdminSession(exchange);
+        if (denied != null) {
+            return denied;
+        }
+        User newUser = userService.createUser();
+        persistAction.accept(UserRepository.Mutation.create(newUser));
+        return new Response(200, "username=" + newUser.getUsername()
+                + "\npassword=" + newUser.getProvisionalPassword());
+    }
+
+    private Response removeUser(HttpExchange exchange, Map<String, String> params) {
+        Response denied = requireAdminSession(exchange);
+        if (denied != null) {
+            return denied;
+        }
+        String username = params.get("username");
+        if (!userService.removeUser(username)) {
+            return new Response(404, "User not found.");
+        }
+        persistAction.accept(UserRepository.Mutation.remove(username, false));
+        authService.invalidateSessions(username);
+        userRemovedAction.accept(username);
+        return new Response(200, "User '" + username + "' and their data have been deleted.");
+    }
+
+    private Response createAdmin(HttpExchange exchange, Map<String, String> params) {
+        Response denied = requireAdminSession(exchange);
+        if (denied != null) {
+            return denied;
+        }
+        Admin newAdmin = adminService.createAdmin();
+        persistAction.accept(UserRepository.Mutation.create(newAdmin));
+        return new Response(200, "username=" + newAdmin.getUsername()
+                + "\npassword=" + newAdmin.getProvisionalPassword());
+    }
+
+    /**
+     * Comprueba que el token sea de un administrador que ya cambió su contraseña provisional
+     * @return null si puede continuar, o la respuesta de rechazo
+     */
+    private Response requireAdminSession(HttpExchange exchange) {
+        User user = authService.validate(bearerToken(exchange));
+        if (!(user instanceof Admin)) {
+            return new Response(403, "Admin session required.");
+        }
+        if (user.isPasswordResetPending()) {
+            return PASSWORD_CHANGE_REQUIRED;
+        }
+        return null;
+    }
+
+    /**
+     * Ejecuta un manejador comprobando el método HTTP y convirtiendo los errores en respuestas
+     */
+    private void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+        Response response;
+        try {
+            if (!method.equals(exchange.getRequestMethod())) {
+                response = new Response(405, "Method not allowed.");
+            } else {
+                response = handler.handle(exchange, readParameters(exchange));
+            }
+        } catch (RuntimeException e) {
+            // El detalle queda en el registro del servidor; el cliente solo recibe un mensaje genérico
+            System.err.println("Error handling " + exchange.getRequestMethod() + " "
+                    + exchange.getRequestURI().getPath() + ":");
+            e.printStackTrace();
+            response = new Response(500, "Internal server error.");
+        }
+        send(exchange, response);
+    }
+
+    private void send(HttpExchange exchange, Response response) throws IOException {
+        byte[] body = (response.body + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            return null;
+        }
+        return header.substring("Bearer ".length()).trim();
+    }
+
+    /**
+     * Lee los parámetros de POST solo del cuerpo (la query string se ignora) y los del resto de
+     * métodos solo de la query string
+     */
+    private static Map<String, String> readParameters(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readAllBytes();
+            if ("POST".equals(exchange.getRequestMethod())) {
+                parseInto(params, new String(body, StandardCharsets.UTF_8));
+            } else {
+                parseInto(params, exchange.getRequestURI().getRawQuery());
+            }
+        }
+        return params;
+    }
+
+    private static void parseInto(Map<String, String> params, String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Manejador de un endpoint
+     */
+    private interface Handler {
+        Response handle(HttpExchange exchange, Map<String, String> params) throws IOException;
+    }
+
+    /**
+     * Respuesta HTTP en texto plano
+     */
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,555 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Repositorio de usuarios sobre una base de datos SQL embebida (en el mismo proceso, sin servidor)
+ * Solo usa JDBC: el controlador de la base de datos se añade al classpath y se elige con la URL
+ * (-Duserauth.jdbc.url, por defecto una base H2 en data/users)
+ *
+ * Usuarios y administradores van en tablas separadas, cada una con índice único por nombre y
+ * una columna para el cambio de contraseña pendiente; la columna seq conserva el orden de alta
+ * para los listados. Todas las consultas son sentencias preparadas que cada conexión del pool
+ * guarda para reutilizarlas. Si la base está vacía y existen datos del repositorio de archivos
+ * (data/userdata.bin, sus shards o data/userdata.ser), se importan la primera vez
+ */
+class JdbcUserRepository implements UserRepository, UserRepository.AccountLookup {
+    private static final String DEFAULT_URL = "jdbc:h2:./data/users";
+    // Filas leídas por consulta al recorrer los usuarios
+    private static final int STREAM_CHUNK_SIZE = 1000;
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE users (seq BIGINT NOT NULL, username VARCHAR(64) NOT NULL,"
+                + " password_hash VARCHAR(255) NOT NULL, password_reset_pending BOOLEAN NOT NULL,"
+                + " CONSTRAINT users_pk PRIMARY KEY (seq))",
+        "CREATE UNIQUE INDEX users_username ON users (username)",
+        "CREATE TABLE admins (seq BIGINT NOT NULL, username VARCHAR(64) NOT NULL,"
+                + " password_hash VARCHAR(255) NOT NULL, password_reset_pending BOOLEAN NOT NULL,"
+                + " CONSTRAINT admins_pk PRIMARY KEY (seq))",
+        "CREATE UNIQUE INDEX admins_username ON admins (username)",
+        "CREATE TABLE user_meta (id INT NOT NULL, user_counter INT NOT NULL, CONSTRAINT user_meta_pk PRIMARY KEY (id))",
+        "INSERT INTO user_meta (id, user_counter) VALUES (1, 1)"
+    };
+
+    private final ConnectionPool pool;
+    private final AtomicLong nextUserSeq = new AtomicLong();
+    private final AtomicLong nextAdminSeq = new AtomicLong();
+    private volatile boolean opened;
+
+    /**
+     * Constructor con la configuración de las propiedades del sistema
+     * userauth.jdbc.url, userauth.jdbc.user (sa), userauth.jdbc.password (vacía),
+     * userauth.jdbc.poolSize (número de núcleos)
+     */
+    public JdbcUserRepository() {
+        this(System.getProperty("userauth.jdbc.url", DEFAULT_URL),
+             System.getProperty("userauth.jdbc.user", "sa"),
+             System.getProperty("userauth.jdbc.password", ""),
+             Integer.getInteger("userauth.jdbc.poolSize", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Constructor con la conexión indicada; las conexiones se abren al primer uso
+     * @param url URL JDBC de la base de datos
+     * @param user usuario de la base de datos
+     * @param password contraseña de la base de datos
+     * @param poolSize número máximo de conexiones abiertas
+     */
+    public JdbcUserRepository(String url, String user, String password, int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Connection pool size must be positive");
+        }
+        this.pool = new ConnectionPool(url, user, password, poolSize);
+    }
+
+    /**
+     * Sustituye el contenido de la base por las cuentas indicadas en una sola transacción
+     */
+    @Override
+    public void save(List<User> users, List<Admin> admins, int userCounter) {
+        open();
+        try (Lease lease = pool.acquire()) {
+            lease.transaction(() -> {
+                lease.statement("DELETE FROM users").executeUpdate();
+                lease.statement("DELETE FROM admins").executeUpdate();
+                insertAll(lease, "INSERT INTO users (seq, username, password_hash, password_reset_pending)"
+                        + " VALUES (?, ?, ?, ?)", users);
+                insertAll(lease, "INSERT INTO admins (seq, username, password_hash, password_reset_pending)"
+                        + " VALUES (?, ?, ?, ?)", admins);
+                PreparedStatement counter = lease.statement("UPDATE user_meta SET user_counter = ? WHERE id = 1");
+                counter.setInt(1, userCounter);
+                counter.executeUpdate();
+            });
+            nextUserSeq.set(users.size());
+            nextAdminSeq.set(admins.size());
+        } catch (SQLException e) {
+            throw new RuntimeException("Error saving data: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public UserData load() {
+        open();
+        List<User> users;
+        try (Stream<User> stream = streamUsers()) {
+            users = stream.collect(Collectors.toList());
+        }
+        return new UserData(users, loadAdmins(), getUserCounter());
+    }
+
+    /**
+     * Este repositorio registra cada mutación sin reescribir el estado completo
+     * @return siempre true
+     */
+    @Override
+    public boolean supportsAppend() {
+        return true;
+    }
+
+    /**
+     * Aplica una mutación en su propia transacción
+     * @param mutation mutación a registrar
+     * @return siempre true: cada mutación se escribe sin reescribir el resto
+     */
+    @Override
+    public boolean append(Mutation mutation) {
+        return appendAll(List.of(mutation));
+    }
+
+    /**
+     * Aplica un lote de mutaciones en una sola transacción
+     * @param mutations mutaciones a registrar, en orden
+     * @return siempre true
+     */
+    @Override
+    public boolean appendAll(List<Mutation> mutations) {
+        open();
+        try (Lease lease = pool.acquire()) {
+            lease.transaction(() -> {
+                for (Mutation mutation : mutations) {
+                    apply(lease, mutation);
+                }
+            });
+            return true;
+        } catch (SQLException e) {
+            throw new RuntimeException("Error saving data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Recorre los usuarios en orden de alta con consultas por bloques sobre seq
+     * No retiene ninguna conexión entre bloques, de modo que un recorrido abandonado no agota el pool
+     * @return stream de usuarios regulares
+     */
+    @Override
+    public Stream<User> streamUsers() {
+        open();
+        Iterator<User> chunks = new Iterator<User>() {
+            private List<User> chunk = List.of();
+            private int position;
+            private long lastSeq = -1;
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (position < chunk.size()) {
+                    return true;
+                }
+                if (exhausted) {
+                    return false;
+                }
+                List<User> next = new ArrayList<>(STREAM_CHUNK_SIZE);
+                lastSeq = queryChunk(lastSeq, next);
+                exhausted = next.size() < STREAM_CHUNK_SIZE;
+                chunk = next;
+                position = 0;
+                return !chunk.isEmpty();
+            }
+
+            @Override
+            public User next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return chunk.get(position++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(chunks,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Obtiene una página con LIMIT/OFFSET sobre el índice de seq
+     */
+    @Override
+    public List<User> page(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative");
+        }
+        open();
+        try (Lease lease = pool.acquire()) {
+            PreparedStatement statement = lease.statement("SELECT username, password_hash, password_reset_pending"
+                    + " FROM users ORDER BY seq LIMIT ? OFFSET ?");
+            statement.setInt(1, limit);
+            statement.setInt(2, offset);
+            List<User> page = new ArrayList<>(Math.min(limit, STREAM_CHUNK_SIZE));
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    page.add(new User(rows.getString(1), rows.getString(2), rows.getBoolean(3)));
+                }
+            }
+            return page;
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading data: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public long count() {
+        open();
+        try (Lease lease = pool.acquire();
+             ResultSet rows = lease.statement("SELECT COUNT(*) FROM users").executeQuery()) {
+            rows.next();
+            return rows.getLong(1);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading data: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public AccountLookup lookup() {
+        return this;
+    }
+
+    /**
+     * Busca un usuario con la consulta preparada sobre el índice único del nombre
+     * @param username nombre del usuario
+     * @return el usuario o null si no existe
+     */
+    @Override
+    public User findUser(String username) {
+        if (username == null) {
+            return null;
+        }
+        open();
+        try (Lease lease = pool.acquire()) {
+            PreparedStatement statement = lease.statement(
+                    "SELECT password_hash, password_reset_pending FROM users WHERE username = ?");
+            statement.setString(1, username);
+            try (ResultSet rows = statement.executeQuery()) {
+                return rows.next() ? new User(username, rows.getString(1), rows.getBoolean(2)) : null;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading data: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public List<Admin> loadAdmins() {
+        open();
+        try (Lease lease = pool.acquire();
+             ResultSet rows = lease.statement("SELECT username, password_hash, password_reset_pending"
+                     + " FROM admins ORDER BY seq").executeQuery()) {
+            List<Admin> admins = new ArrayList<>();
+            while (rows.next()) {
+                admins.add(new Admin(rows.getString(1), rows.getString(2), rows.getBoolean(3)));
+            }
+            return admins;
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading data: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int getUserCounter() {
+        open();
+        try (Lease lease = pool.acquire();
+             ResultSet rows = lease.statement("SELECT user_counter FROM user_meta WHERE id = 1").executeQuery()) {
+            return rows.next() ? rows.getInt(1) : 1;
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Cierra todas las conexiones del pool
+     */
+    public void close() {
+        pool.close();
+    }
+
+    private long queryChunk(long afterSeq, List<User> target) {
+        try (Lease lease = pool.acquire()) {
+            PreparedStatement statement = lease.statement("SELECT seq, username, password_hash, password_reset_pending"
+                    + " FROM users WHERE seq > ? ORDER BY seq LIMIT ?");
+            statement.setLong(1, afterSeq);
+            statement.setInt(2, STREAM_CHUNK_SIZE);
+            long lastSeq = afterSeq;
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    lastSeq = rows.getLong(1);
+                    target.add(new User(rows.getString(2), rows.getString(3), rows.getBoolean(4)));
+                }
+            }
+            return lastSeq;
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Aplica una mutación con las mismas reglas que la reproducción del registro de archivos:
+     * un alta sustituye a una cuenta existente y el contador solo avanza
+     */
+    private void apply(Lease lease, Mutation mutation) throws SQLException {
+        String table = mutation.admin ? "admins" : "users";
+        switch (mutation.type) {
+            case CREATE: {
+                PreparedStatement update = lease.statement("UPDATE " + table
+                        + " SET password_hash = ?, password_reset_pending = ? WHERE username = ?");
+                update.setString(1, mutation.passwordHash);
+                update.setBoolean(2, mutation.passwordResetPending);
+                update.setString(3, mutation.username);
+                if (update.executeUpdate() == 0) {
+                    PreparedStatement insert = lease.statement("INSERT INTO " + table
+                            + " (seq, username, password_hash, password_reset_pending) VALUES (?, ?, ?, ?)");
+                    insert.setLong(1, (mutation.admin ? nextAdminSeq : nextUserSeq).getAndIncrement());
+                    insert.setString(2, mutation.username);
+                    insert.setString(3, mutation.passwordHash);
+                    insert.setBoolean(4, mutation.passwordResetPending);
+                    insert.executeUpdate();
+                }
+                break;
+            }
+            case PASSWORD_CHANGE: {
+                PreparedStatement update = lease.statement("UPDATE " + table
+                        + " SET password_hash = ?, password_reset_pending = ? WHERE username = ?");
+                update.setString(1, mutation.passwordHash);
+                update.setBoolean(2, mutation.passwordResetPending);
+                update.setString(3, mutation.username);
+                update.executeUpdate();
+                break;
+            }
+            case REMOVE: {
+                PreparedStatement delete = lease.statement("DELETE FROM " + table + " WHERE username = ?");
+                delete.setString(1, mutation.username);
+                delete.executeUpdate();
+                break;
+            }
+            case COUNTER: {
+                PreparedStatement counter = lease.statement(
+                        "UPDATE user_meta SET user_counter = ? WHERE id = 1 AND user_counter < ?");
+                counter.setInt(1, mutation.userCounter);
+                counter.setInt(2, mutation.userCounter);
+                counter.executeUpdate();
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    private static void insertAll(Lease lease, String sql, List<? extends User> accounts) throws SQLException {
+        PreparedStatement insert = lease.statement(sql);
+        long seq = 0;
+        for (User account : accounts) {
+            insert.setLong(1, seq++);
+            insert.setString(2, account.getUsername());
+            insert.setString(3, account.getPassword());
+            insert.setBoolean(4, account.isPasswordResetPending());
+            insert.addBatch();
+            if (seq % STREAM_CHUNK_SIZE == 0) {
+                insert.executeBatch();
+            }
+        }
+        insert.executeBatch();
+    }
+
+    /**
+     * Crea el esquema la primera vez y migra los datos del repositorio de archivos si la base está vacía
+     */
+    private void open() {
+        if (opened) {
+            return;
+        }
+        synchronized (this) {
+            if (opened) {
+                return;
+            }
+            try (Lease lease = pool.acquire()) {
+                if (!schemaExists(lease.connection)) {
+                    lease.transaction(() -> {
+                        try (Statement ddl = lease.connection.createStatement()) {
+                            for (String sql : SCHEMA) {
+                                ddl.executeUpdate(sql);
+                            }
+                        }
+                    });
+                }
+                nextUserSeq.set(maxSeq(lease, "users") + 1);
+                nextAdminSeq.set(maxSeq(lease, "admins") + 1);
+            } catch (SQLException e) {
+                throw new RuntimeException("Error loading data: " + e.getMessage());
+            }
+            opened = true;
+
+            if (count() == 0 && loadAdmins().isEmpty() && UserSnapshotStore.hasData()) {
+                UserData legacy = FileUserRepository.forExistingData().load();
+                save(legacy.users, legacy.admins, legacy.userCounter);
+            }
+        }
+    }
+
+    private static boolean schemaExists(Connection connection) throws SQLException {
+        // Los nombres sin comillas pueden guardarse en mayúsculas o minúsculas según la base de datos
+        for (String name : new String[] {"USER_META", "user_meta"}) {
+            try (ResultSet tables = connection.getMetaData().getTables(null, null, name, null)) {
+                if (tables.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static long maxSeq(Lease lease, String table) throws SQLException {
+        try (ResultSet rows = lease.statement("SELECT MAX(seq) FROM " + table).executeQuery()) {
+            if (!rows.next()) {
+                return -1;
+            }
+            long max = rows.getLong(1);
+            return rows.wasNull() ? -1 : max;
+        }
+    }
+
+    /**
+     * Cuerpo de una transacción
+     */
+    private interface SqlWork {
+        void run() throws SQLException;
+    }
+
+    /**
+     * Pool de conexiones de tamaño fijo; cada conexión guarda sus sentencias preparadas
+     * Las conexiones se abren a medida que se necesitan, hasta el máximo
+     */
+    private static final class ConnectionPool {
+        private final String url;
+        private final String user;
+        private final String password;
+        private final BlockingQueue<Lease> idle;
+        private final AtomicLong opened = new AtomicLong();
+        private final int maxSize;
+
+        ConnectionPool(String url, String user, String password, int maxSize) {
+            this.url = url;
+            this.user = user;
+            this.password = password;
+            this.maxSize = maxSize;
+            this.idle = new ArrayBlockingQueue<>(maxSize);
+        }
+
+        Lease acquire() throws SQLException {
+            Lease lease = idle.poll();
+            if (lease != null) {
+                return lease;
+            }
+            if (opened.incrementAndGet() <= maxSize) {
+                try {
+                    return new Lease(this, DriverManager.getConnection(url, user, password));
+                } catch (SQLException | RuntimeException e) {
+                    opened.decrementAndGet();
+                    throw e;
+                }
+            }
+            opened.decrementAndGet();
+            try {
+                return idle.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection");
+            }
+        }
+
+        void release(Lease lease) {
+            if (!idle.offer(lease)) {
+                lease.closeQuietly();
+                opened.decrementAndGet();
+            }
+        }
+
+        void close() {
+            Lease lease;
+            while ((lease = idle.poll()) != null) {
+                lease.closeQuietly();
+                opened.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Conexión prestada por el pool; cerrarla la devuelve al pool
+     */
+    private static final class Lease implements AutoCloseable {
+        private final ConnectionPool pool;
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        Lease(ConnectionPool pool, Connection connection) {
+            this.pool = pool;
+            this.connection = connection;
+        }
+
+        PreparedStatement statement(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        void transaction(SqlWork work) throws SQLException {
+            connection.setAutoCommit(false);
+            try {
+                work.run();
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // La conexión ya no se usará
+            }
+        }
+
+        @Override
+        public void close() {
+            pool.release(this);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limitador de intentos de login sin bloqueos
+ * Combina un token bucket por nombre de usuario y otro global para que una ráfaga de
+ * intentos se rechace antes de calcular ningún hash de contraseña
+ * Cada intento admitido reserva un token de su usuario y se devuelve si el login tiene éxito,
+ * así que el límite por usuario cuenta los fallos aunque lleguen todos a la vez. El bucket de
+ * un usuario solo se crea cuando el global ya admitió el intento, de modo que probar nombres
+ * inexistentes no llena el mapa más deprisa de lo que admite el bucket global
+ * Los buckets por usuario que llevan tiempo llenos se eliminan periódicamente
+ */
+class LoginThrottle {
+    private final Map<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final TokenBucket globalBucket;
+    private final int userCapacity;
+    private final long userRefillNanos;
+    private final long idleEvictionNanos;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedByUser = new LongAdder();
+    private final LongAdder rejectedGlobally = new LongAdder();
+
+    /**
+     * Constructor con los parámetros de ambos buckets
+     * @param userCapacity intentos seguidos permitidos por usuario
+     * @param userRefillPerMinute intentos por minuto que recupera cada usuario
+     * @param globalCapacity intentos seguidos permitidos en todo el sistema
+     * @param globalRefillPerSecond intentos por segundo que recupera el bucket global
+     * @param idleEvictionMinutes minutos tras los que se elimina un bucket de usuario lleno
+     */
+    public LoginThrottle(int userCapacity, int userRefillPerMinute,
+                         int globalCapacity, int globalRefillPerSecond, long idleEvictionMinutes) {
+        if (userCapacity < 1 || userRefillPerMinute < 1 || globalCapacity < 1 || globalRefillPerSecond < 1) {
+            throw new IllegalArgumentException("Throttle capacities and rates must be positive");
+        }
+        this.userCapacity = userCapacity;
+        this.userRefillNanos = TimeUnit.MINUTES.toNanos(1) / userRefillPerMinute;
+        this.globalBucket = new TokenBucket(globalCapacity, TimeUnit.SECONDS.toNanos(1) / globalRefillPerSecond);
+        this.idleEvictionNanos = TimeUnit.MINUTES.toNanos(idleEvictionMinutes);
+
+        ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "login-throttle-eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, idleEvictionMinutes);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Crea un limitador con los parámetros de las propiedades del sistema
+     * userauth.throttle.userCapacity (5), userauth.throttle.userRefillPerMinute (5),
+     * userauth.throttle.globalCapacity (100), userauth.throttle.globalRefillPerSecond (50),
+     * userauth.throttle.idleMinutes (10)
+     * @return limitador configurado
+     */
+    public static LoginThrottle fromSystemProperties() {
+        return new LoginThrottle(
+                Integer.getInteger("userauth.throttle.userCapacity", 5),
+                Integer.getInteger("userauth.throttle.userRefillPerMinute", 5),
+                Integer.getInteger("userauth.throttle.globalCapacity", 100),
+                Integer.getInteger("userauth.throttle.globalRefillPerSecond", 50),
+                Long.getLong("userauth.throttle.idleMinutes", 10));
+    }
+
+    /**
+     * Intenta admitir un intento de login
+     * Reserva un token del bucket global y otro del usuario; si el usuario no tiene, se devuelve
+     * el global, para que atacar una sola cuenta no agote el límite de las demás
+     * @param username nombre de usuario del intento
+     * @return true si el intento puede continuar, false si se rechaza
+     */
+    public boolean tryAcquire(String username) {
+        long now = System.nanoTime();
+        if (!globalBucket.tryConsume(now)) {
+            rejectedGlobally.increment();
+            return false;
+        }
+        if (!userBucket(username).tryConsume(now)) {
+            globalBucket.refund();
+            rejectedByUser.increment();
+            return false;
+        }
+        admitted.increment();
+        return true;
+    }
+
+    /**
+     * Devuelve al usuario el token reservado por un intento admitido que se autenticó
+     * El token global no se devuelve: el hash ya se calculó
+     * @param username nombre de usuario del intento
+     */
+    public void recordSuccess(String username) {
+        TokenBucket bucket = userBuckets.get(key(username));
+        if (bucket != null) {
+            bucket.refund();
+        }
+    }
+
+    /**
+     * Obtiene el número de intentos admitidos
+     * @return intentos que pasaron el limitador
+     */
+    public long getAdmittedCount() {
+        return admitted.sum();
+    }
+
+    /**
+     * Obtiene el número de intentos rechazados por el bucket del usuario
+     * @return intentos rechazados por usuario
+     */
+    public long getRejectedByUserCount() {
+        return rejectedByUser.sum();
+    }
+
+    /**
+     * Obtiene el número de intentos rechazados por el bucket global
+     * @return intentos rechazados globalmente
+     */
+    public long getRejectedGloballyCount() {
+        return rejectedGlobally.sum();
+    }
+
+    /**
+     * Genera un resumen de los contadores del limitador
+     * @return información de intentos admitidos y rechazados
+     */
+    public String getStats() {
+        return String.format("Login attempts admitted: %d | rejected (per user): %d | rejected (global): %d | tracked users: %d",
+                getAdmittedCount(), getRejectedByUserCount(), getRejectedGloballyCount(), userBuckets.size());
+    }
+
+    private TokenBucket userBucket(String username) {
+        return userBuckets.computeIfAbsent(key(username), k -> new TokenBucket(userCapacity, userRefillNanos));
+    }
+
+    private static String key(String username) {
+        return username == null ? "" : username;
+    }
+
+    /**
+     * Elimina los buckets de usuario que llevan el tiempo de inactividad completamente llenos
+     */
+    private void evictIdle() {
+        long now = System.nanoTime();
+        userBuckets.entrySet().removeIf(entry -> entry.getValue().isIdleSince(now, idleEvictionNanos));
+    }
+
+    /**
+     * Token bucket representado por su "tiempo teórico de llegada" en un único AtomicLong
+     * Consumir un token adelanta ese tiempo un intervalo; el bucket está vacío cuando
+     * queda más de (capacidad) intervalos por delante del instante actual
+     */
+    private static final class TokenBucket {
+        private final long intervalNanos;
+        private final long burstNanos;
+        private final AtomicLong theoreticalArrival;
+
+        TokenBucket(int capacity, long intervalNanos) {
+            this.intervalNanos = intervalNanos;
+            this.burstNanos = intervalNanos * capacity;
+            this.theoreticalArrival = new AtomicLong(System.nanoTime());
+        }
+
+        boolean tryConsume(long now) {
+            while (true) {
+                long current = theoreticalArrival.get();
+                long next = Math.max(current, now) + intervalNanos;
+                if (next - now > burstNanos) {
+                    return false;
+                }
+                if (theoreticalArrival.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Devuelve un token consumido con tryConsume
+         */
+        void refund() {
+            theoreticalArrival.addAndGet(-intervalNanos);
+        }
+
+        boolean isIdleSince(long now, long idleNanos) {
+            return now - theoreticalArrival.get() >= idleNanos;
+        }
+    }
+}
@@ -1,6 +1,14 @@
 public class MainApp {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
         Controller controller = new Controller();
+        
+        // Modo sin interfaz gráfica: --headless [puerto]
+        if (args.length > 0 && "--headless".equals(args[0])) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+            controller.startHeadless(port);
+            return;
+        }
+        
         controller.start();
     }
 }
@@ -0,0 +1,678 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Repositorio de usuarios sobre archivos mapeados en memoria
+ * data/users.dat guarda registros de ancho fijo y data/users.idx una tabla hash de direccionamiento
+ * abierto (sondeo lineal) indexada por nombre de usuario, de modo que buscar una cuenta lee un
+ * único registro a través del mapeo sin cargar el resto: arrancar no depende del número de cuentas
+ *
+ * Las lecturas nunca se bloquean: cada registro lleva un contador de secuencia (seqlock) que el
+ * lector comprueba antes y después de copiarlo, y al crecer el archivo o redimensionar el índice
+ * se construye un mapeo nuevo que se publica de una vez; los lectores que aún usan el anterior
+ * siguen viendo datos válidos. Las escrituras se serializan entre sí
+ *
+ * Las escrituras llegan a la caché de páginas al momento (sobreviven a la caída del proceso);
+ * save fuerza además ambos archivos al disco
+ */
+class MappedUserRepository implements UserRepository, UserRepository.AccountLookup {
+    private static final String DATA_FILE = "data/users.dat";
+    private static final String INDEX_FILE = "data/users.idx";
+
+    // Cabecera del archivo de registros
+    private static final int DATA_MAGIC = 0x554D4150;      // "UMAP"
+    private static final int DATA_VERSION = 1;
+    private static final int DATA_HEADER = 64;
+    private static final int OFF_RECORD_COUNT = 8;
+    private static final int OFF_USER_COUNTER = 12;
+
+    // Registro de ancho fijo: secuencia, flags, longitudes, nombre y hash
+    static final int RECORD_SIZE = 256;
+    static final int MAX_USERNAME_BYTES = 64;
+    static final int MAX_HASH_BYTES = 184;
+    private static final int OFF_SEQ = 0;
+    private static final int OFF_FLAGS = 4;
+    private static final int OFF_NAME_LENGTH = 5;
+    private static final int OFF_HASH_LENGTH = 6;
+    private static final int OFF_NAME = 8;
+    private static final int OFF_HASH = OFF_NAME + MAX_USERNAME_BYTES;
+    private static final int FLAG_LIVE = 1;
+    private static final int FLAG_ADMIN = 1 << 1;
+    private static final int FLAG_PASSWORD_RESET_PENDING = 1 << 2;
+
+    // Cabecera del índice y codificación de las ranuras: hash en los 32 bits altos, registro + 1 en los bajos
+    private static final int INDEX_MAGIC = 0x55494458;     // "UIDX"
+    private static final int INDEX_HEADER = 16;
+    private static final int OFF_INDEXED_RECORDS = 8;
+    private static final int OFF_USED_SLOTS = 12;
+    private static final long EMPTY = 0L;
+    private static final long TOMBSTONE = -1L << 32;
+    private static final int MIN_INDEX_CAPACITY = 1024;
+    private static final int MIN_RECORD_CAPACITY = 1024;
+    // Ocupación máxima del índice (ranuras vivas y borradas) antes de redimensionarlo, en décimas
+    private static final int MAX_LOAD_TENTHS = 7;
+    // Un único MappedByteBuffer no puede pasar de 2 GB
+    private static final int MAX_RECORDS = (Integer.MAX_VALUE - DATA_HEADER) / RECORD_SIZE;
+
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Path dataPath;
+    private final Path indexPath;
+
+    // Estado publicado para los lectores; solo los escritores lo sustituyen
+    private volatile Mapping mapping;
+    private FileChannel dataChannel;
+    private FileChannel indexChannel;
+    private int recordCount;
+    private int indexUsed;
+
+    /**
+     * Constructor que usa los archivos por defecto en el directorio data
+     */
+    public MappedUserRepository() {
+        this(Paths.get(DATA_FILE), Paths.get(INDEX_FILE));
+    }
+
+    /**
+     * Constructor con las rutas de los archivos de registros e índice
+     * @param dataPath archivo de registros
+     * @param indexPath archivo del índice
+     */
+    public MappedUserRepository(Path dataPath, Path indexPath) {
+        this.dataPath = dataPath;
+        this.indexPath = indexPath;
+    }
+
+    /**
+     * Carga todas las cuentas recorriendo los registros (para herramientas y compatibilidad)
+     * El controlador usa lookup() en su lugar y no necesita esta carga completa
+     */
+    @Override
+    public UserData load() {
+        open();
+        Mapping current = mapping;
+        List<User> users = new ArrayList<>();
+        List<Admin> admins = new ArrayList<>();
+        int count = recordCountOf(current);
+        for (int record = 0; record < count; record++) {
+            User account = readRecord(current, record, null, false);
+            if (account instanceof Admin) {
+                admins.add((Admin) account);
+            } else if (account != null) {
+                users.add(account);
+            }
+        }
+        return new UserData(users, admins, getUserCounter());
+    }
+
+    /**
+     * Reescribe los archivos con solo las cuentas indicadas y los fuerza al disco
+     * Los registros de cuentas eliminadas desaparecen y el índice se reconstruye sin ranuras borradas
+     */
+    @Override
+    public synchronized void save(List<User> users, List<Admin> admins, int userCounter) {
+        open();
+        try {
+            Path tempData = dataPath.resolveSibling(dataPath.getFileName() + ".tmp");
+            int total = users.size() + admins.size();
+            try (FileChannel channel = FileChannel.open(tempData, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer records = mapData(channel, Math.max(MIN_RECORD_CAPACITY, total));
+                int record = 0;
+                for (User user : users) {
+                    writeRecord(records, record++, user, false);
+                }
+                for (Admin admin : admins) {
+                    writeRecord(records, record++, admin, true);
+                }
+                records.putInt(OFF_RECORD_COUNT, total);
+                records.putInt(OFF_USER_COUNTER, userCounter);
+                records.force();
+            }
+
+            dataChannel.close();
+            Files.move(tempData, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dataChannel = openChannel(dataPath);
+            recordCount = total;
+            // Registros e índice nuevos se publican juntos
+            rebuildIndex(mapData(dataChannel, capacityOf(dataChannel)));
+            mapping.index.force();
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Este repositorio registra cada mutación sin reescribir el estado completo
+     * @return siempre true
+     */
+    @Override
+    public boolean supportsAppend() {
+        return true;
+    }
+
+    /**
+     * Aplica la mutación directamente sobre los registros mapeados
+     * @param mutation mutación a registrar
+     * @return siempre true: cada mutación cuesta O(1)
+     */
+    @Override
+    public synchronized boolean append(Mutation mutation) {
+        open();
+        switch (mutation.type) {
+            case CREATE:
+                upsert(mutation, true);
+                break;
+            case PASSWORD_CHANGE:
+                upsert(mutation, false);
+                break;
+            case REMOVE:
+                remove(mutation.username, mutation.admin);
+                break;
+            case COUNTER:
+                Mapping current = mapping;
+                int stored = current.records.getInt(OFF_USER_COUNTER);
+                current.records.putInt(OFF_USER_COUNTER, Math.max(stored, mutation.userCounter));
+                break;
+        }
+        return true;
+    }
+
+    @Override
+    public AccountLookup lookup() {
+        open();
+        return this;
+    }
+
+    /**
+     * Busca un usuario regular leyendo un único registro, sin bloquear
+     * @param username nombre de usuario
+     * @return el usuario o null si no existe
+     */
+    @Override
+    public User findUser(String username) {
+        return find(username, false);
+    }
+
+    /**
+     * Busca un administrador leyendo un único registro, sin bloquear
+     * @param username nombre del administrador
+     * @return el administrador o null si no existe
+     */
+    public Admin findAdmin(String username) {
+        return (Admin) find(username, true);
+    }
+
+    /**
+     * Recorre los usuarios leyendo los registros del mapeo de uno en uno, sin copiarlos a una lista
+     * @return stream de usuarios regulares en orden de registro
+     */
+    @Override
+    public Stream<User> streamUsers() {
+        open();
+        Mapping current = mapping;
+        return IntStream.range(0, recordCountOf(current))
+                .filter(record -> isLiveUser(current, record))
+                .mapToObj(record -> readRecord(current, record, null, false))
+                .filter(account -> account != null && !(account instanceof Admin));
+    }
+
+    /**
+     * Cuenta los usuarios leyendo solo el byte de flags de cada registro
+     * @return número de usuarios regulares
+     */
+    @Override
+    public long count() {
+        open();
+        Mapping current = mapping;
+        int count = recordCountOf(current);
+        long users = 0;
+        for (int record = 0; record < count; record++) {
+            if (isLiveUser(current, record)) {
+                users++;
+            }
+        }
+        return users;
+    }
+
+    @Override
+    public List<Admin> loadAdmins() {
+        // Recorre solo el byte de flags de cada registro y decodifica los administradores
+        open();
+        Mapping current = mapping;
+        List<Admin> admins = new ArrayList<>();
+        int count = recordCountOf(current);
+        for (int record = 0; record < count; record++) {
+            int flags = current.records.get(recordOffset(record) + OFF_FLAGS);
+            if ((flags & (FLAG_LIVE | FLAG_ADMIN)) == (FLAG_LIVE | FLAG_ADMIN)) {
+                User account = readRecord(current, record, null, true);
+                if (account != null) {
+                    admins.add((Admin) account);
+                }
+            }
+        }
+        return admins;
+    }
+
+    @Override
+    public int getUserCounter() {
+        open();
+        return mapping.records.getInt(OFF_USER_COUNTER);
+    }
+
+    /**
+     * Obtiene el número de ranuras del índice, para consultar sus redimensionados
+     * @return capacidad actual del índice
+     */
+    public int getIndexCapacity() {
+        open();
+        return mapping.indexCapacity;
+    }
+
+    private User find(String username, boolean admin) {
+        if (username == null) {
+            return null;
+        }
+        open();
+        Mapping current = mapping;
+        int hash = hash(username, admin);
+        int mask = current.indexCapacity - 1;
+        for (int probe = 0, slot = hash & mask; probe < current.indexCapacity; probe++, slot = (slot + 1) & mask) {
+            long entry = (long) LONGS.getAcquire(current.index, slotOffset(slot));
+            if (entry == EMPTY) {
+                return null;
+            }
+            if (entry != TOMBSTONE && (int) (entry >>> 32) == hash) {
+                // El registro se publicó antes que la ranura; si el mapeo de registros ha crecido, usar el nuevo
+                Mapping latest = mapping;
+                int record = (int) entry - 1;
+                Mapping source = record < latest.recordCapacity ? latest : current;
+                if (record >= source.recordCapacity) {
+                    continue;
+                }
+                User account = readRecord(source, record, username, admin);
+                if (account != null) {
+                    return account;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lee un registro con el protocolo seqlock: si un escritor lo modificó durante la copia se repite
+     * @param expectedName nombre esperado, o null para aceptar cualquier registro vivo
+     * @return la cuenta, o null si el registro no está vivo o no coincide
+     */
+    private static User readRecord(Mapping current, int record, String expectedName, boolean admin) {
+        MappedByteBuffer records = current.records;
+        int base = recordOffset(record);
+        byte[] name = new byte[MAX_USERNAME_BYTES];
+        byte[] hash = new byte[MAX_HASH_BYTES];
+        int flags;
+        int nameLength;
+        int hashLength;
+        while (true) {
+            int before = (int) INTS.getAcquire(records, base + OFF_SEQ);
+            if ((before & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            flags = records.get(base + OFF_FLAGS);
+            nameLength = Math.min(MAX_USERNAME_BYTES, records.get(base + OFF_NAME_LENGTH) & 0xFF);
+            hashLength = Math.min(MAX_HASH_BYTES, records.getShort(base + OFF_HASH_LENGTH) & 0xFFFF);
+            records.get(base + OFF_NAME, name, 0, nameLength);
+            records.get(base + OFF_HASH, hash, 0, hashLength);
+            VarHandle.loadLoadFence();
+            if ((int) INTS.getVolatile(records, base + OFF_SEQ) == before) {
+                break;
+            }
+        }
+
+        if ((flags & FLAG_LIVE) == 0) {
+            return null;
+        }
+        boolean isAdmin = (flags & FLAG_ADMIN) != 0;
+        String username = new String(name, 0, nameLength, StandardCharsets.UTF_8);
+        if (expectedName != null && (isAdmin != admin || !expectedName.equals(username))) {
+            return null;
+        }
+        String passwordHash = new String(hash, 0, hashLength, StandardCharsets.UTF_8);
+        boolean resetPending = (flags & FLAG_PASSWORD_RESET_PENDING) != 0;
+        return isAdmin ? new Admin(username, passwordHash, resetPending) : new User(username, passwordHash, resetPending);
+    }
+
+    /**
+     * Escribe un registro rodeado por el contador de secuencia (impar mientras se escribe)
+     */
+    private static void writeRecord(MappedByteBuffer records, int record, String username, boolean admin,
+                                     String passwordHash, boolean resetPending, boolean live) {
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        byte[] hash = passwordHash == null ? new byte[0] : passwordHash.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_USERNAME_BYTES || hash.length > MAX_HASH_BYTES) {
+            throw new IllegalArgumentException("Account '" + username + "' does not fit in a fixed-width record");
+        }
+
+        int base = recordOffset(record);
+        int sequence = (int) INTS.getVolatile(records, base + OFF_SEQ);
+        INTS.setVolatile(records, base + OFF_SEQ, sequence + 1);
+        int flags = (live ? FLAG_LIVE : 0) | (admin ? FLAG_ADMIN : 0)
+                | (resetPending ? FLAG_PASSWORD_RESET_PENDING : 0);
+        records.put(base + OFF_FLAGS, (byte) flags);
+        records.put(base + OFF_NAME_LENGTH, (byte) name.length);
+        records.putShort(base + OFF_HASH_LENGTH, (short) hash.length);
+        records.put(base + OFF_NAME, name);
+        records.put(base + OFF_HASH, hash);
+        INTS.setRelease(records, base + OFF_SEQ, sequence + 2);
+    }
+
+    private static void writeRecord(MappedByteBuffer records, int record, User account, boolean admin) {
+        writeRecord(records, record, account.getUsername(), admin, account.getPassword(),
+                account.isPasswordResetPending(), true);
+    }
+
+    private void upsert(Mutation mutation, boolean createIfMissing) {
+        int slot = locate(mutation.username, mutation.admin);
+        if (slot >= 0) {
+            int record = (int) (long) LONGS.getAcquire(mapping.index, slotOffset(slot)) - 1;
+            writeRecord(mapping.records, record, mutation.username, mutation.admin, mutation.passwordHash,
+                    mutation.passwordResetPending, true);
+            return;
+        }
+        if (!createIfMissing) {
+            return;
+        }
+
+        ensureRecordCapacity(recordCount + 1);
+        int record = recordCount;
+        writeRecord(mapping.records, record, mutation.username, mutation.admin, mutation.passwordHash,
+                mutation.passwordResetPending, true);
+        recordCount++;
+        mapping.records.putInt(OFF_RECORD_COUNT, recordCount);
+
+        ensureIndexCapacity(indexUsed + 1);
+        insertSlot(mapping, hash(mutation.username, mutation.admin), record);
+        indexUsed++;
+        mapping.index.putInt(OFF_USED_SLOTS, indexUsed);
+        mapping.index.putInt(OFF_INDEXED_RECORDS, recordCount);
+    }
+
+    private void remove(String username, boolean admin) {
+        int slot = locate(username, admin);
+        if (slot < 0) {
+            return;
+        }
+        Mapping current = mapping;
+        int record = (int) (long) LONGS.getAcquire(current.index, slotOffset(slot)) - 1;
+        int base = recordOffset(record);
+        int sequence = (int) INTS.getVolatile(current.records, base + OFF_SEQ);
+        INTS.setVolatile(current.records, base + OFF_SEQ, sequence + 1);
+        current.records.put(base + OFF_FLAGS, (byte) (current.records.get(base + OFF_FLAGS) & ~FLAG_LIVE));
+        INTS.setRelease(current.records, base + OFF_SEQ, sequence + 2);
+        LONGS.setRelease(current.index, slotOffset(slot), TOMBSTONE);
+    }
+
+    /**
+     * Busca la ranura de una cuenta viva (solo escritores)
+     * @return número de ranura o -1 si no existe
+     */
+    private int locate(String username, boolean admin) {
+        Mapping current = mapping;
+        int hash = hash(username, admin);
+        int mask = current.indexCapacity - 1;
+        for (int probe = 0, slot = hash & mask; probe < current.indexCapacity; probe++, slot = (slot + 1) & mask) {
+            long entry = (long) LONGS.getAcquire(current.index, slotOffset(slot));
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry != TOMBSTONE && (int) (entry >>> 32) == hash
+                    && readRecord(current, (int) entry - 1, username, admin) != null) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static void insertSlot(Mapping target, int hash, int record) {
+        int mask = target.indexCapacity - 1;
+        int slot = hash & mask;
+        while (true) {
+            long entry = (long) LONGS.getAcquire(target.index, slotOffset(slot));
+            if (entry == EMPTY || entry == TOMBSTONE) {
+                LONGS.setRelease(target.index, slotOffset(slot), ((long) hash << 32) | ((record + 1) & 0xFFFFFFFFL));
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Hace crecer el archivo de registros duplicando su capacidad y publica el mapeo nuevo
+     */
+    private void ensureRecordCapacity(int required) {
+        if (required <= mapping.recordCapacity) {
+            return;
+        }
+        if (required > MAX_RECORDS) {
+            throw new IllegalStateException("Mapped user store is full (" + MAX_RECORDS + " records)");
+        }
+        int capacity = (int) Math.min(MAX_RECORDS, Math.max((long) required, 2L * mapping.recordCapacity));
+        try {
+            MappedByteBuffer records = mapData(dataChannel, capacity);
+            mapping = new Mapping(records, mapping.index, mapping.indexCapacity);
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Redimensiona el índice cuando supera la ocupación máxima
+     * El índice nuevo se construye en un archivo aparte y se publica al terminar: los lectores
+     * siguen usando el anterior mientras tanto y nunca esperan
+     */
+    private void ensureIndexCapacity(int required) {
+        if ((long) required * 10 <= (long) mapping.indexCapacity * MAX_LOAD_TENTHS) {
+            return;
+        }
+        try {
+            rebuildIndex(mapping.records);
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Construye un índice nuevo sobre los registros indicados y publica ambos en un único mapeo
+     */
+    private void rebuildIndex(MappedByteBuffer records) throws IOException {
+        int live = 0;
+        for (int record = 0; record < recordCount; record++) {
+            if ((records.get(recordOffset(record) + OFF_FLAGS) & FLAG_LIVE) != 0) {
+                live++;
+            }
+        }
+        int capacity = MIN_INDEX_CAPACITY;
+        while ((long) (live + 1) * 10 > (long) capacity * MAX_LOAD_TENTHS / 2) {
+            capacity <<= 1;
+        }
+
+        Path tempIndex = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        FileChannel channel = FileChannel.open(tempIndex, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer index = mapIndex(channel, capacity);
+        Mapping rebuilt = new Mapping(records, index, capacity);
+        byte[] name = new byte[MAX_USERNAME_BYTES];
+        for (int record = 0; record < recordCount; record++) {
+            int base = recordOffset(record);
+            int flags = records.get(base + OFF_FLAGS);
+            if ((flags & FLAG_LIVE) == 0) {
+                continue;
+            }
+            int nameLength = records.get(base + OFF_NAME_LENGTH) & 0xFF;
+            records.get(base + OFF_NAME, name, 0, nameLength);
+            String username = new String(name, 0, nameLength, StandardCharsets.UTF_8);
+            insertSlot(rebuilt, hash(username, (flags & FLAG_ADMIN) != 0), record);
+        }
+        index.putInt(OFF_USED_SLOTS, live);
+        index.putInt(OFF_INDEXED_RECORDS, recordCount);
+
+        Files.move(tempIndex, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel previous = indexChannel;
+        indexChannel = channel;
+        indexUsed = live;
+        mapping = rebuilt;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Abre y mapea los archivos la primera vez; si no existen y hay datos del repositorio de archivos, los migra
+     */
+    private void open() {
+        if (mapping != null) {
+            return;
+        }
+        synchronized (this) {
+            if (mapping != null) {
+                return;
+            }
+            try {
+                Files.createDirectories(dataPath.toAbsolutePath().getParent());
+                boolean created = !Files.exists(dataPath);
+                dataChannel = openChannel(dataPath);
+                MappedByteBuffer records;
+                if (created || dataChannel.size() < DATA_HEADER) {
+                    records = mapData(dataChannel, MIN_RECORD_CAPACITY);
+                    records.putInt(OFF_USER_COUNTER, 1);
+                } else {
+                    records = mapData(dataChannel, capacityOf(dataChannel));
+                    if (records.getInt(0) != DATA_MAGIC || records.getInt(4) > DATA_VERSION) {
+                        throw new IOException("Not a mapped user store: " + dataPath);
+                    }
+                }
+                recordCount = records.getInt(OFF_RECORD_COUNT);
+                mapping = new Mapping(records, null, 0);
+
+                // El índice se reconstruye si falta o no cubre todos los registros (p. ej. tras una caída)
+                if (!openIndex()) {
+                    rebuildIndex(records);
+                }
+            } catch (IOException e) {
+                mapping = null;
+                throw new RuntimeException("Error loading data: " + e.getMessage());
+            }
+
+            if (recordCount == 0 && UserSnapshotStore.hasData()) {
+                UserData legacy = FileUserRepository.forExistingData().load();
+                save(legacy.users, legacy.admins, legacy.userCounter);
+            }
+        }
+    }
+
+    private boolean openIndex() throws IOException {
+        if (!Files.exists(indexPath) || Files.size(indexPath) <= INDEX_HEADER) {
+            return false;
+        }
+        FileChannel channel = openChannel(indexPath);
+        int capacity = (int) ((channel.size() - INDEX_HEADER) / Long.BYTES);
+        MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (index.getInt(0) != INDEX_MAGIC || index.getInt(4) != capacity
+                || Integer.bitCount(capacity) != 1 || index.getInt(OFF_INDEXED_RECORDS) != recordCount) {
+            channel.close();
+            return false;
+        }
+
+        indexChannel = channel;
+        indexUsed = index.getInt(OFF_USED_SLOTS);
+        mapping = new Mapping(mapping.records, index, capacity);
+        return true;
+    }
+
+    private static FileChannel openChannel(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static MappedByteBuffer mapData(FileChannel channel, int recordCapacity) throws IOException {
+        long size = DATA_HEADER + (long) recordCapacity * RECORD_SIZE;
+        MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        records.putInt(0, DATA_MAGIC);
+        records.putInt(4, DATA_VERSION);
+        return records;
+    }
+
+    private static MappedByteBuffer mapIndex(FileChannel channel, int capacity) throws IOException {
+        MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                INDEX_HEADER + (long) capacity * Long.BYTES);
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, capacity);
+        return index;
+    }
+
+    private static int capacityOf(FileChannel channel) throws IOException {
+        return (int) Math.max(MIN_RECORD_CAPACITY, (channel.size() - DATA_HEADER) / RECORD_SIZE);
+    }
+
+    private static int recordCountOf(Mapping current) {
+        return Math.min(current.recordCapacity, current.records.getInt(OFF_RECORD_COUNT));
+    }
+
+    private static boolean isLiveUser(Mapping current, int record) {
+        int flags = current.records.get(recordOffset(record) + OFF_FLAGS);
+        return (flags & (FLAG_LIVE | FLAG_ADMIN)) == FLAG_LIVE;
+    }
+
+    private static int recordOffset(int record) {
+        return DATA_HEADER + record * RECORD_SIZE;
+    }
+
+    private static int slotOffset(int slot) {
+        return INDEX_HEADER + slot * Long.BYTES;
+    }
+
+    /**
+     * Hash FNV-1a de 32 bits del nombre con el tipo de cuenta mezclado
+     * Nunca devuelve el valor reservado para las ranuras borradas
+     */
+    private static int hash(String username, boolean admin) {
+        int hash = admin ? 0x811c9dc5 ^ 0x5bd1e995 : 0x811c9dc5;
+        for (int i = 0; i < username.length(); i++) {
+            hash ^= username.charAt(i);
+            hash *= 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        return hash == -1 ? 0x7fffffff : hash;
+    }
+
+    /**
+     * Mapeos publicados juntos para que un lector nunca combine un índice con registros de otro estado
+     */
+    private static final class Mapping {
+        final MappedByteBuffer records;
+        final int recordCapacity;
+        final MappedByteBuffer index;
+        final int indexCapacity;
+
+        Mapping(MappedByteBuffer records, MappedByteBuffer index, int indexCapacity) {
+            this.records = records;
+            this.recordCapacity = (records.capacity() - DATA_HEADER) / RECORD_SIZE;
+            this.index = index;
+            this.indexCapacity = indexCapacity;
+        }
+    }
+}
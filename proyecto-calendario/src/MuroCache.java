@@ -0,0 +1,310 @@
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Caché del muro social compartida por todo el proceso
+ * Los segmentos (ver MuroSegmentStore) se leen una sola vez; las sesiones comparten la misma estructura.
+ * Antes de cada lectura se comprueba con dos consultas de atributos si otro proceso escribió en
+ * los segmentos, y solo entonces se vuelven a leer. Publicar o borrar añade un registro al
+ * segmento activo en lugar de reescribir el muro.
+ *
+ * Las publicaciones se guardan en una skip list ordenada por (fecha, hora, secuencia): insertar
+ * cuesta O(log n) sin reordenar nada, el recorrido sale siempre en orden y las publicaciones con
+ * la misma fecha y hora conservan el orden en que se publicaron (la secuencia). La misma skip
+ * list es el índice por fecha y hora del evento: una consulta por intervalo localiza su inicio en
+ * O(log n) y solo recorre las k publicaciones que devuelve. Un índice secundario por autor guarda
+ * las publicaciones de cada usuario con las mismas claves, así que listarlas o borrarlas cuesta O(k) en
+ * lugar de recorrer todo el muro. Los lectores nunca se bloquean; cada cambio incrementa la versión
+ */
+final class MuroCache {
+    private static final MuroCache INSTANCE = new MuroCache(MuroSegmentStore.fromSystemProperties(),
+            MuroSearchIndex.fromSystemProperties());
+
+    private final MuroSegmentStore store;
+    private final MuroSearchIndex search;
+    // Estado publicado para los lectores; solo se sustituye con el monitor de la caché
+    private volatile Snapshot snapshot;
+
+    /**
+     * Constructor con el almacén y el índice de búsqueda del muro indicados
+     * @param store segmentos de publicaciones
+     * @param search índice de palabras de los mensajes
+     */
+    MuroCache(MuroSegmentStore store, MuroSearchIndex search) {
+        this.store = store;
+        this.search = search;
+    }
+
+    /**
+     * Obtiene la caché compartida del muro (data/muro)
+     * @return caché del proceso
+     */
+    static MuroCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Obtiene las publicaciones ordenadas por fecha y hora
+     * Solo lee los segmentos la primera vez o si otro proceso los cambió desde la última carga
+     * @return vista de solo lectura en orden; refleja las publicaciones posteriores mientras se recorre
+     *         (consistencia débil, sin bloqueos ni ConcurrentModificationException)
+     */
+    public Collection<SocialCalendarApp.PublicacionMuro> getPublicaciones() {
+        return Collections.unmodifiableCollection(current().publicaciones.values());
+    }
+
+    /**
+     * Recorre el muro de forma perezosa desde un extremo o desde una fecha, sin copiarlo
+     * Solo se leen las publicaciones que se consumen del iterador, así que mostrar una página
+     * cuesta lo mismo con cien publicaciones que con un millón
+     * @param desde fecha en la que empezar: la primera publicación de ese día o posterior, o con
+     *              newestFirst la última de ese día o anterior (null para empezar por el extremo)
+     * @param newestFirst true para ir de la publicación más reciente a la más antigua
+     * @return iterador de solo lectura con la misma consistencia débil que getPublicaciones()
+     */
+    public Iterator<SocialCalendarApp.PublicacionMuro> iterator(LocalDate desde, boolean newestFirst) {
+        NavigableMap<Key, SocialCalendarApp.PublicacionMuro> publicaciones = current().publicaciones;
+        if (desde != null) {
+            publicaciones = newestFirst
+                    ? publicaciones.headMap(Key.before(desde.plusDays(1).atStartOfDay()), false)
+                    : publicaciones.tailMap(Key.before(desde.atStartOfDay()), true);
+        }
+        if (newestFirst) {
+            publicaciones = publicaciones.descendingMap();
+        }
+        return Collections.unmodifiableCollection(publicaciones.values()).iterator();
+    }
+
+    /**
+     * Obtiene las publicaciones cuyo evento cae en un intervalo, en orden de fecha y hora
+     * Cuesta O(log n + k): no se recorre el resto del muro
+     * @param desde instante inicial (incluido)
+     * @param hasta instante final (excluido)
+     * @return stream perezoso sobre la estructura compartida, con consistencia débil
+     * @throws IllegalArgumentException si el intervalo termina antes de empezar
+     */
+    public Stream<SocialCalendarApp.PublicacionMuro> between(LocalDateTime desde, LocalDateTime hasta) {
+        if (hasta.isBefore(desde)) {
+            throw new IllegalArgumentException("Range end must not be before its start");
+        }
+        return current().publicaciones.subMap(Key.before(desde), true, Key.before(hasta), false).values().stream();
+    }
+
+    /**
+     * Cursor de próximas publicaciones: las de un instante o posteriores, de la más cercana a la más lejana
+     * Se puede abandonar en cualquier momento; solo se recorre lo que se consume
+     * @param desde instante desde el que buscar (normalmente ahora)
+     * @return iterador de solo lectura con consistencia débil
+     */
+    public Iterator<SocialCalendarApp.PublicacionMuro> upcoming(LocalDateTime desde) {
+        return Collections.unmodifiableCollection(current().publicaciones.tailMap(Key.before(desde), true).values())
+                .iterator();
+    }
+
+    /**
+     * Obtiene las publicaciones de un usuario en orden de fecha y hora, sin recorrer el muro
+     * @param username autor de las publicaciones
+     * @return vista de solo lectura con consistencia débil (vacía si no publicó nada)
+     */
+    public Collection<SocialCalendarApp.PublicacionMuro> getPublicacionesDe(String username) {
+        ConcurrentSkipListMap<Key, SocialCalendarApp.PublicacionMuro> publicaciones = current().byAuthor.get(username);
+        return publicaciones == null ? List.of() : Collections.unmodifiableCollection(publicaciones.values());
+    }
+
+    /**
+     * Busca publicaciones por palabras de su mensaje con el índice invertido (ver MuroSearchIndex)
+     * @param consulta palabras (todas deben aparecer), alternativas separadas por OR y prefijos con *
+     * @return publicaciones encontradas en orden de fecha y hora
+     */
+    public List<SocialCalendarApp.PublicacionMuro> buscar(String consulta) {
+        current();
+        return search.search(consulta);
+    }
+
+    /**
+     * Obtiene el número de publicaciones sin recorrer el muro
+     * @return publicaciones del muro
+     */
+    public int size() {
+        return current().size.get();
+    }
+
+    /**
+     * Obtiene la versión del muro, que aumenta con cada cambio (propio o detectado en el archivo)
+     * @return versión actual
+     */
+    public long getVersion() {
+        return current().version;
+    }
+
+    /**
+     * Agrega una publicación en su posición (tras las de la misma fecha y hora) y la guarda
+     * Si no se puede guardar, informa del error y no la agrega
+     * @param publicacion publicación a agregar
+     */
+    public synchronized void add(SocialCalendarApp.PublicacionMuro publicacion) {
+        Snapshot current = current();
+        long sequence;
+        try {
+            sequence = store.appendPost(publicacion);
+        } catch (IOException e) {
+            System.err.println("Error saving muro: " + e.getMessage());
+            return;
+        }
+        index(current, new Key(publicacion, sequence));
+        search.add(sequence, publicacion);
+        current.size.incrementAndGet();
+        publish(current);
+    }
+
+    /**
+     * Elimina todas las publicaciones de un usuario y registra el borrado con una lápida si había alguna
+     * Solo visita las publicaciones del usuario (índice por autor), no el muro entero
+     * @param username usuario cuyas publicaciones se eliminan
+     * @return número de publicaciones eliminadas
+     */
+    public synchronized int removeByUser(String username) {
+        Snapshot current = current();
+        ConcurrentSkipListMap<Key, SocialCalendarApp.PublicacionMuro> publicaciones = current.byAuthor.remove(username);
+        int removed = 0;
+        if (publicaciones != null) {
+            for (Key key : publicaciones.keySet()) {
+                if (current.publicaciones.remove(key) != null) {
+                    search.remove(key.sequence);
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            current.size.addAndGet(-removed);
+            try {
+                store.appendTombstone(username);
+            } catch (IOException e) {
+                System.err.println("Error saving muro: " + e.getMessage());
+            }
+            publish(current);
+        }
+        return removed;
+    }
+
+    /**
+     * Devuelve el estado vigente, recargándolo si los segmentos cambiaron fuera de esta caché
+     */
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current != null && store.isCurrent()) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || !store.isCurrent()) {
+                // Se construye una estructura nueva: los lectores de la anterior no ven una carga a medias
+                List<MuroSegmentStore.Entry> loaded = read();
+                Snapshot reloaded = new Snapshot(new ConcurrentSkipListMap<>(), new ConcurrentHashMap<>(),
+                        new AtomicInteger(loaded.size()), current == null ? 0 : current.version + 1);
+                for (MuroSegmentStore.Entry entry : loaded) {
+                    index(reloaded, new Key(entry.publicacion, entry.sequence));
+                }
+                // Solo se tokenizan las publicaciones que el índice guardado no contiene
+                search.synchronize(loaded);
+                current = reloaded;
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Publica la nueva versión del muro modificado; debe llamarse con el monitor de la caché
+     */
+    private void publish(Snapshot current) {
+        snapshot = new Snapshot(current.publicaciones, current.byAuthor, current.size, current.version + 1);
+    }
+
+    /**
+     * Agrega una publicación al muro y al índice por autor
+     */
+    private static void index(Snapshot snapshot, Key key) {
+        snapshot.publicaciones.put(key, key.publicacion);
+        snapshot.byAuthor.computeIfAbsent(key.publicacion.getUsuario(), usuario -> new ConcurrentSkipListMap<>())
+                .put(key, key.publicacion);
+    }
+
+    private List<MuroSegmentStore.Entry> read() {
+        try {
+            return store.readAll();
+        } catch (IOException e) {
+            System.err.println("Error loading muro: " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Clave de orden del muro: fecha, hora y secuencia de llegada
+     */
+    private static final class Key implements Comparable<Key> {
+        final LocalDate fecha;
+        final LocalTime hora;
+        final long sequence;
+        final SocialCalendarApp.PublicacionMuro publicacion;
+
+        Key(SocialCalendarApp.PublicacionMuro publicacion, long sequence) {
+            this(publicacion.getFecha(), publicacion.getHora(), sequence, publicacion);
+        }
+
+        private Key(LocalDate fecha, LocalTime hora, long sequence, SocialCalendarApp.PublicacionMuro publicacion) {
+            this.fecha = fecha;
+            this.hora = hora;
+            this.sequence = sequence;
+            this.publicacion = publicacion;
+        }
+
+        /**
+         * Límite anterior a todas las publicaciones de un instante, para buscar en el muro
+         */
+        static Key before(LocalDateTime instante) {
+            return new Key(instante.toLocalDate(), instante.toLocalTime(), Long.MIN_VALUE, null);
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int comparison = fecha.compareTo(other.fecha);
+            if (comparison == 0) {
+                comparison = hora.compareTo(other.hora);
+            }
+            return comparison != 0 ? comparison : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * Publicaciones cargadas y versión del muro
+     * La estructura se comparte entre versiones sucesivas mientras los segmentos no cambien por fuera
+     */
+    private static final class Snapshot {
+        final ConcurrentSkipListMap<Key, SocialCalendarApp.PublicacionMuro> publicaciones;
+        // Índice secundario: publicaciones de cada autor con las mismas claves, en el orden del muro
+        final ConcurrentHashMap<String, ConcurrentSkipListMap<Key, SocialCalendarApp.PublicacionMuro>> byAuthor;
+        final AtomicInteger size;
+        final long version;
+
+        Snapshot(ConcurrentSkipListMap<Key, SocialCalendarApp.PublicacionMuro> publicaciones,
+                 ConcurrentHashMap<String, ConcurrentSkipListMap<Key, SocialCalendarApp.PublicacionMuro>> byAuthor,
+                 AtomicInteger size, long version) {
+            this.publicaciones = publicaciones;
+            this.byAuthor = byAuthor;
+            this.size = size;
+            this.version = version;
+        }
+    }
+}
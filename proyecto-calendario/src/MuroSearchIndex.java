@@ -0,0 +1,482 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Índice invertido de los mensajes del muro para buscar por palabras
+ * Cada palabra (en minúsculas y sin tildes: "canción", "CANCION" y "cancion" son la misma) apunta a la
+ * lista de secuencias de las publicaciones que la contienen, comprimida con diferencias entre
+ * secuencias consecutivas en enteros de longitud variable (uno o dos bytes por publicación).
+ * Se mantiene al publicar y al borrar publicaciones, sin reconstruirse; las borradas solo salen de
+ * las listas al guardar.
+ *
+ * Consultas: palabras separadas por espacios deben aparecer todas; OR separa alternativas y un
+ * asterisco final busca por prefijo ("fiesta playa OR concierto*"). Los resultados salen en el
+ * orden del muro (fecha y hora).
+ *
+ * El índice se guarda en data/muro.search cada cierto número de cambios y al cerrar el proceso;
+ * al arrancar se carga y solo se indexan las publicaciones que no estaban en el archivo.
+ *
+ * Configuración: -Duserauth.muro.searchCheckpoint (1000 cambios)
+ */
+final class MuroSearchIndex {
+    static final String SEARCH_FILE = "data/muro.search";
+    // Cabecera: "MSX" + versión del formato
+    private static final int MAGIC = 0x4D535801;
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final Path file;
+    private final int checkpointChanges;
+
+    // Estado protegido por el monitor del índice
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    // Publicaciones vigentes indexadas; las listas pueden contener aún secuencias borradas
+    private final Map<Long, SocialCalendarApp.PublicacionMuro> documents = new HashMap<>();
+    // Secuencias indexadas según el archivo, hasta que se emparejan con las publicaciones cargadas
+    private Set<Long> persisted;
+    private boolean loaded;
+    private int changes;
+    private boolean shutdownHookRegistered;
+
+    /**
+     * Constructor del índice; el archivo se lee al sincronizar por primera vez
+     * @param file archivo donde se guarda el índice
+     * @param checkpointChanges cambios tras los que se vuelve a guardar
+     */
+    MuroSearchIndex(Path file, int checkpointChanges) {
+        if (checkpointChanges < 1) {
+            throw new IllegalArgumentException("Search checkpoint interval must be positive");
+        }
+        this.file = file;
+        this.checkpointChanges = checkpointChanges;
+    }
+
+    /**
+     * Crea el índice de data/muro.search con la configuración de las propiedades del sistema
+     * @return índice configurado
+     */
+    static MuroSearchIndex fromSystemProperties() {
+        return new MuroSearchIndex(Paths.get(SEARCH_FILE), Integer.getInteger("userauth.muro.searchCheckpoint", 1000));
+    }
+
+    /**
+     * Ajusta el índice a las publicaciones vigentes del muro tras cargarlo
+     * Solo se tokenizan las publicaciones que el índice aún no contiene; las borradas desde
+     * el último guardado se ignoran en las búsquedas y se purgan en el siguiente
+     * @param live publicaciones vigentes con su secuencia
+     */
+    public synchronized void synchronize(List<MuroSegmentStore.Entry> live) {
+        if (!loaded) {
+            loaded = true;
+            readFile();
+            registerShutdownHook();
+        }
+        Set<Long> known = new HashSet<>(documents.keySet());
+        if (persisted != null) {
+            known.addAll(persisted);
+            persisted = null;
+        }
+        documents.clear();
+        int matched = 0;
+        for (MuroSegmentStore.Entry entry : live) {
+            if (known.contains(entry.sequence)) {
+                documents.put(entry.sequence, entry.publicacion);
+                matched++;
+            } else if (index(entry.sequence, entry.publicacion)) {
+                changes++;
+            }
+        }
+        // Las borradas cuentan como cambios para purgarlas en el próximo guardado; se guarda una
+        // sola vez al final y no cada checkpointChanges publicaciones de la carga
+        changes += known.size() - matched;
+        if (changes >= checkpointChanges) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Indexa una publicación nueva
+     * @param sequence secuencia de la publicación
+     * @param publicacion publicación a indexar
+     */
+    public synchronized void add(long sequence, SocialCalendarApp.PublicacionMuro publicacion) {
+        if (index(sequence, publicacion)) {
+            noteChange();
+        }
+    }
+
+    /**
+     * Quita una publicación del índice sin tocar las listas de sus palabras: las búsquedas
+     * ya ignoran su secuencia y el siguiente guardado la purga, como al sincronizar
+     * @param sequence secuencia de la publicación borrada
+     */
+    public synchronized void remove(long sequence) {
+        if (documents.remove(sequence) != null) {
+            noteChange();
+        }
+    }
+
+    /**
+     * Busca publicaciones por palabras
+     * @param query palabras (todas deben aparecer), alternativas separadas por OR y prefijos con *
+     * @return publicaciones encontradas en orden de fecha y hora (vacío si la consulta no tiene palabras)
+     */
+    public synchronized List<SocialCalendarApp.PublicacionMuro> search(String query) {
+        long[] matches = new long[0];
+        for (String alternative : query.trim().split("\\s+(?i:OR)\\s+")) {
+            matches = union(matches, evaluateAll(alternative));
+        }
+
+        // Las secuencias de publicaciones borradas desde el último guardado se descartan aquí
+        List<Long> found = new ArrayList<>(matches.length);
+        for (long sequence : matches) {
+            if (documents.containsKey(sequence)) {
+                found.add(sequence);
+            }
+        }
+        found.sort(Comparator.comparing((Long sequence) -> documents.get(sequence),
+                SocialCalendarApp.PublicacionMuro.POR_FECHA_Y_HORA).thenComparing(Comparator.naturalOrder()));
+        List<SocialCalendarApp.PublicacionMuro> results = new ArrayList<>(found.size());
+        for (Long sequence : found) {
+            results.add(documents.get(sequence));
+        }
+        return results;
+    }
+
+    /**
+     * Guarda el índice si cambió desde el último guardado
+     */
+    public synchronized void checkpointIfDirty() {
+        if (changes > 0) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Palabras distintas de un texto, en minúsculas y sin tildes, diéresis ni virgulillas
+     * @param text texto a dividir
+     * @return palabras normalizadas en orden de aparición
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : SEPARATORS.split(normalize(text))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static String normalize(String text) {
+        // NFD separa cada letra de su tilde (también la virgulilla de la ñ), que después se elimina:
+        // así "cumpleanos" encuentra "cumpleaños", como al escribir sin teclado español
+        String decomposed = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("");
+    }
+
+    /**
+     * Evalúa una alternativa: todas sus palabras (o prefijos) deben aparecer
+     */
+    private long[] evaluateAll(String alternative) {
+        List<long[]> lists = new ArrayList<>();
+        for (String word : alternative.split("\\s+")) {
+            boolean prefix = word.endsWith("*");
+            Set<String> tokens = tokenize(prefix ? word.substring(0, word.length() - 1) : word);
+            Iterator<String> iterator = tokens.iterator();
+            while (iterator.hasNext()) {
+                String token = iterator.next();
+                // En "fiest*" solo la última palabra es un prefijo
+                lists.add(prefix && !iterator.hasNext() ? prefixMatches(token) : exactMatches(token));
+            }
+        }
+        if (lists.isEmpty()) {
+            return new long[0];
+        }
+        // Se intersecan de la lista más corta a la más larga
+        lists.sort(Comparator.comparingInt(list -> list.length));
+        long[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    private long[] exactMatches(String term) {
+        Postings postings = terms.get(term);
+        return postings == null ? new long[0] : postings.toArray();
+    }
+
+    private long[] prefixMatches(String prefix) {
+        long[] result = new long[0];
+        for (Postings postings : terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            result = union(result, postings.toArray());
+        }
+        return result;
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static long[] union(long[] a, long[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        long[] result = new long[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[n++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                result[n++] = b[j++];
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private boolean index(long sequence, SocialCalendarApp.PublicacionMuro publicacion) {
+        if (documents.putIfAbsent(sequence, publicacion) != null) {
+            return false;
+        }
+        for (String term : tokenize(publicacion.getMensaje())) {
+            terms.computeIfAbsent(term, t -> new Postings()).add(sequence);
+        }
+        return true;
+    }
+
+    private void noteChange() {
+        if (++changes >= checkpointChanges) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Escribe el índice completo de forma atómica, sin las secuencias de publicaciones borradas
+     */
+    private void checkpoint() {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                long[] sequences = documents.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+                Postings.of(sequences).writeTo(out);
+                // Se purgan las secuencias de publicaciones borradas que quedaran en las listas
+                Iterator<Map.Entry<String, Postings>> iterator = terms.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<String, Postings> term = iterator.next();
+                    Postings postings = term.getValue().retainAll(documents.keySet());
+                    if (postings.count == 0) {
+                        iterator.remove();
+                    } else {
+                        term.setValue(postings);
+                    }
+                }
+                out.writeInt(terms.size());
+                for (Map.Entry<String, Postings> term : terms.entrySet()) {
+                    out.writeUTF(term.getKey());
+                    term.getValue().writeTo(out);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            changes = 0;
+        } catch (IOException e) {
+            System.err.println("Error saving muro search index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Carga el índice guardado; si falta o está dañado se empieza vacío y se reconstruye al sincronizar
+     */
+    private void readFile() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a muro search index: " + file);
+            }
+            Set<Long> sequences = new HashSet<>();
+            for (long sequence : Postings.readFrom(in).toArray()) {
+                sequences.add(sequence);
+            }
+            int termCount = in.readInt();
+            TreeMap<String, Postings> read = new TreeMap<>();
+            for (int i = 0; i < termCount; i++) {
+                read.put(in.readUTF(), Postings.readFrom(in));
+            }
+            terms.putAll(read);
+            persisted = sequences;
+        } catch (IOException e) {
+            // EOFException incluida: un archivo cortado obliga a reconstruir, nunca a perder resultados
+            System.err.println("Error loading muro search index: " + e.getMessage());
+        }
+    }
+
+    private void registerShutdownHook() {
+        if (!shutdownHookRegistered) {
+            shutdownHookRegistered = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(this::checkpointIfDirty, "muro-search-checkpoint"));
+        }
+    }
+
+    /**
+     * Lista de secuencias en orden creciente, comprimida: cada secuencia se guarda como la
+     * diferencia con la anterior en un entero de longitud variable (7 bits por byte)
+     */
+    static final class Postings {
+        private byte[] bytes = new byte[8];
+        private int length;
+        int count;
+        private long last = -1;
+
+        static Postings of(long[] sorted) {
+            Postings postings = new Postings();
+            for (long sequence : sorted) {
+                postings.add(sequence);
+            }
+            return postings;
+        }
+
+        /**
+         * Añade una secuencia; al final en O(1) si es mayor que todas (el caso normal)
+         */
+        void add(long sequence) {
+            if (sequence <= last) {
+                // Publicación de otro proceso con una secuencia anterior: se reconstruye la lista
+                long[] sequences = toArray();
+                int position = Arrays.binarySearch(sequences, sequence);
+                if (position >= 0) {
+                    return;
+                }
+                long[] merged = new long[sequences.length + 1];
+                int insert = -position - 1;
+                System.arraycopy(sequences, 0, merged, 0, insert);
+                merged[insert] = sequence;
+                System.arraycopy(sequences, insert, merged, insert + 1, sequences.length - insert);
+                replaceWith(merged);
+                return;
+            }
+            ensureCapacity(10);
+            long delta = sequence - last;
+            while ((delta & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            bytes[length++] = (byte) delta;
+            last = sequence;
+            count++;
+        }
+
+        /**
+         * Copia de la lista con solo las secuencias de un conjunto
+         */
+        Postings retainAll(Set<Long> keep) {
+            Postings retained = new Postings();
+            for (long sequence : toArray()) {
+                if (keep.contains(sequence)) {
+                    retained.add(sequence);
+                }
+            }
+            return retained;
+        }
+
+        long[] toArray() {
+            long[] sequences = new long[count];
+            long current = -1;
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                current += delta;
+                sequences[i] = current;
+            }
+            return sequences;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(count);
+            out.writeLong(last);
+            out.writeInt(length);
+            out.write(bytes, 0, length);
+        }
+
+        static Postings readFrom(DataInputStream in) throws IOException {
+            Postings postings = new Postings();
+            postings.count = in.readInt();
+            postings.last = in.readLong();
+            postings.length = in.readInt();
+            if (postings.count < 0 || postings.length < postings.count) {
+                throw new EOFException("Corrupt postings list");
+            }
+            postings.bytes = new byte[Math.max(8, postings.length)];
+            in.readFully(postings.bytes, 0, postings.length);
+            return postings;
+        }
+
+        private void replaceWith(long[] sequences) {
+            bytes = new byte[8];
+            length = 0;
+            count = 0;
+            last = -1;
+            for (long sequence : sequences) {
+                add(sequence);
+            }
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,906 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Almacenamiento del muro en segmentos de solo escritura al final (data/muro/)
+ * Cada publicación se añade al segmento activo como un registro [longitud][CRC32][contenido] y
+ * cada borrado de publicaciones de un usuario como una lápida, así que publicar cuesta una
+ * escritura pequeña sea cual sea el tamaño del muro. Cuando el segmento activo supera un tamaño
+ * se sella con un índice (qué segmentos cubre, su longitud, cuántas publicaciones tiene y sus
+ * fechas mínima y máxima) y se abre otro; un hilo en segundo plano fusiona los segmentos sellados
+ * en uno solo, ordenado por fecha y hora, aplicando las lápidas para recuperar el espacio. Cada
+ * fusión se prepara en un archivo propio de merging/, bloqueado mientras dura, así que otro
+ * proceso que abra el almacén no la confunde con una fusión cortada.
+ *
+ * Cada publicación lleva una secuencia creciente que se reparte desde el archivo "sequence" bajo
+ * un bloqueo de archivo, de modo que varios procesos pueden publicar a la vez sin repetirla; una
+ * lápida borra las publicaciones del usuario con secuencia menor. Al leer, un registro
+ * incompleto al final del segmento activo (escritura cortada por un fallo) se descarta. Si al
+ * abrir existe el antiguo data/muro.ser, se migra a un primer segmento.
+ *
+ * Configuración: -Duserauth.muro.fsync=always|interval|never (interval), -Duserauth.muro.fsyncMillis (1000),
+ * -Duserauth.muro.segmentBytes (1 MiB), -Duserauth.muro.mergeSegments (4)
+ */
+class MuroSegmentStore implements Closeable {
+    static final String DIRECTORY = "data/muro";
+    private static final String LEGACY_FILE = "data/muro.ser";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String SEQUENCE_FILE = "sequence";
+    // Fusiones en curso; fuera del directorio de segmentos para no alterar su fecha de modificación
+    private static final String MERGING_DIRECTORY = "merging";
+    // Cabeceras: "MSG"/"MSI" + versión del formato
+    private static final int MAGIC = 0x4D534701;
+    private static final int INDEX_MAGIC = 0x4D534901;
+    private static final int HEADER_BYTES = Integer.BYTES;
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+    // Usuario y mensaje se escriben con writeUTF (64 KiB como máximo cada uno)
+    private static final int MAX_RECORD_BYTES = 192 * 1024;
+
+    private static final byte POST = 0;
+    private static final byte TOMBSTONE = 1;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int mergeSegments;
+    private final UserMutationLog.FsyncPolicy fsyncPolicy;
+
+    // Estado protegido por el monitor del almacén
+    private FileChannel sequenceChannel;
+    private FileChannel active;
+    private long activeId;
+    private Stamp expected;
+    private boolean externalChange;
+    private boolean dirty;
+    private ScheduledExecutorService maintenance;
+
+    /**
+     * Constructor del almacén; los archivos se abren en el primer uso
+     * @param directory directorio de los segmentos
+     * @param segmentBytes tamaño a partir del cual se sella el segmento activo
+     * @param mergeSegments segmentos sellados a partir de los cuales se fusionan
+     * @param fsyncPolicy política de sincronización con el disco
+     */
+    MuroSegmentStore(Path directory, long segmentBytes, int mergeSegments, UserMutationLog.FsyncPolicy fsyncPolicy) {
+        if (segmentBytes <= HEADER_BYTES || mergeSegments < 2) {
+            throw new IllegalArgumentException("Invalid muro segment configuration");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.mergeSegments = mergeSegments;
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    /**
+     * Crea el almacén de data/muro con la configuración de las propiedades del sistema
+     * @return almacén configurado
+     */
+    static MuroSegmentStore fromSystemProperties() {
+        return new MuroSegmentStore(Paths.get(DIRECTORY),
+                Long.getLong("userauth.muro.segmentBytes", 1024 * 1024),
+                Integer.getInteger("userauth.muro.mergeSegments", 4),
+                UserMutationLog.FsyncPolicy.valueOf(
+                        System.getProperty("userauth.muro.fsync", "interval").toUpperCase(Locale.ROOT)));
+    }
+
+    /**
+     * Publicación del muro junto con su secuencia
+     */
+    static final class Entry {
+        final long sequence;
+        final SocialCalendarApp.PublicacionMuro publicacion;
+
+        Entry(long sequence, SocialCalendarApp.PublicacionMuro publicacion) {
+            this.sequence = sequence;
+            this.publicacion = publicacion;
+        }
+    }
+
+    /**
+     * Lee todas las publicaciones vigentes (sin las borradas por lápidas)
+     * Marca el estado leído como el conocido: isCurrent() vuelve a ser true hasta que otro proceso lo cambie
+     * @return publicaciones en el orden de los segmentos
+     * @throws IOException si algún segmento no se puede leer
+     */
+    public synchronized List<Entry> readAll() throws IOException {
+        ensureOpen();
+        FileLock lock = sequenceChannel.lock();
+        try {
+            reopenIfChanged();
+            Map<Long, Entry> posts = new HashMap<>();
+            Map<String, Long> tombstones = new HashMap<>();
+            for (long id : segmentIds()) {
+                readSegment(segmentPath(id), record -> collect(record, posts, tombstones));
+            }
+            List<Entry> live = new ArrayList<>(posts.size());
+            for (Entry entry : posts.values()) {
+                if (isLive(entry, tombstones)) {
+                    live.add(entry);
+                }
+            }
+            live.sort(Comparator.comparingLong(entry -> entry.sequence));
+            expected = stamp();
+            externalChange = false;
+            return live;
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Indica si los segmentos siguen como se leyeron o escribieron por última vez desde este almacén
+     * Cuesta dos consultas de atributos al sistema de archivos
+     * @return false si otro proceso publicó, borró o fusionó desde entonces
+     */
+    public synchronized boolean isCurrent() {
+        if (active == null || externalChange) {
+            return false;
+        }
+        try {
+            return stamp().equals(expected);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Añade una publicación al segmento activo
+     * @param publicacion publicación a guardar
+     * @return secuencia asignada
+     * @throws IOException si la escritura falla
+     */
+    public synchronized long appendPost(SocialCalendarApp.PublicacionMuro publicacion) throws IOException {
+        return append(POST, publicacion.getUsuario(), publicacion);
+    }
+
+    /**
+     * Añade una lápida que borra todas las publicaciones anteriores de un usuario
+     * @param usuario usuario cuyas publicaciones se borran
+     * @throws IOException si la escritura falla
+     */
+    public synchronized void appendTombstone(String usuario) throws IOException {
+        append(TOMBSTONE, usuario, null);
+    }
+
+    /**
+     * Fusiona los segmentos sellados en uno solo, ordenado y sin publicaciones borradas
+     * La lectura y la escritura del segmento nuevo no bloquean las publicaciones; solo el
+     * intercambio final de archivos se hace con el bloqueo, tras comprobar que otro proceso
+     * no fusionó ya los mismos segmentos
+     * @return true si se fusionó algo
+     * @throws IOException si la fusión falla (los segmentos originales quedan intactos)
+     */
+    public boolean merge() throws IOException {
+        List<Long> inputs;
+        synchronized (this) {
+            ensureOpen();
+            inputs = sealedSegmentIds();
+        }
+        if (inputs.size() < 2) {
+            return false;
+        }
+
+        // Los segmentos sellados no cambian: se leen sin bloqueo
+        Map<Long, Entry> posts = new HashMap<>();
+        Map<String, Long> tombstones = new HashMap<>();
+        for (long id : inputs) {
+            readSegment(segmentPath(id), record -> collect(record, posts, tombstones));
+        }
+        // Las lápidas pueden descartarse: todas las publicaciones más antiguas están en la fusión
+        List<Entry> live = new ArrayList<>(posts.size());
+        for (Entry entry : posts.values()) {
+            if (isLive(entry, tombstones)) {
+                live.add(entry);
+            }
+        }
+        live.sort(WALL_ORDER);
+
+        long firstId = inputs.get(0);
+        long mergedId = inputs.get(inputs.size() - 1);
+        // Nombre único por fusión: dos procesos que fusionan a la vez no escriben el mismo archivo
+        Path mergedSegment = Files.createTempFile(directory.resolve(MERGING_DIRECTORY), mergedId + "-", SEGMENT_SUFFIX);
+        Path mergedIndex = mergedSegment.resolveSibling(mergedSegment.getFileName() + INDEX_SUFFIX);
+        FileChannel staging = FileChannel.open(mergedSegment, StandardOpenOption.WRITE);
+        try {
+            // Mientras el segmento en preparación está bloqueado, removeMergeLeftovers no lo borra
+            FileLock stagingLock = staging.lock();
+            writeSegment(staging, live);
+            SegmentIndex.build(mergedSegment, firstId, true).write(mergedIndex);
+            synchronized (this) {
+                FileLock lock = sequenceChannel.lock();
+                try {
+                    // Con el bloqueo del almacén nadie puede limpiar merging/: se cierra antes de moverlo
+                    stagingLock.release();
+                    staging.close();
+                    return swapMerged(inputs, mergedId, mergedSegment, mergedIndex);
+                } finally {
+                    lock.release();
+                }
+            }
+        } finally {
+            staging.close();
+            // Tras el intercambio ya no existen; si la fusión se abandonó, no deja restos
+            Files.deleteIfExists(mergedSegment);
+            Files.deleteIfExists(mergedIndex);
+        }
+    }
+
+    /**
+     * Sustituye los segmentos de entrada por el fusionado; con el bloqueo tomado
+     * @return false si otro proceso ya los fusionó o la fusión perdió sus archivos
+     */
+    private boolean swapMerged(List<Long> inputs, long mergedId, Path mergedSegment, Path mergedIndex)
+            throws IOException {
+        if (!Files.exists(mergedSegment) || !Files.exists(mergedIndex)) {
+            // Se borró como resto de una fusión cortada antes de llegar a bloquearlo
+            return false;
+        }
+        for (long id : inputs) {
+            if (!Files.exists(segmentPath(id))) {
+                return false;
+            }
+        }
+        boolean unchanged = isCurrent();
+        // Primero el segmento y luego su índice: el índice es el que declara cubiertos los anteriores
+        Files.move(mergedSegment, segmentPath(mergedId), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        Files.move(mergedIndex, indexPath(mergedId), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        for (long id : inputs) {
+            if (id != mergedId) {
+                deleteSegment(id);
+            }
+        }
+        // El contenido vigente no cambia: si nadie más escribió, la caché sigue siendo válida
+        if (unchanged) {
+            expected = stamp();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (maintenance != null) {
+            maintenance.shutdown();
+            maintenance = null;
+        }
+        if (active != null) {
+            active.force(false);
+            active.close();
+            active = null;
+        }
+        if (sequenceChannel != null) {
+            sequenceChannel.force(false);
+            sequenceChannel.close();
+            sequenceChannel = null;
+        }
+    }
+
+    private long append(byte type, String usuario, SocialCalendarApp.PublicacionMuro publicacion) throws IOException {
+        ensureOpen();
+        FileLock lock = sequenceChannel.lock();
+        try {
+            if (!stamp().equals(expected)) {
+                // Otro proceso escribió: el estado en memoria de quien lee ya no está completo
+                externalChange = true;
+                reopenIfChanged();
+            }
+            long sequence = readNextSequence();
+            byte[] payload = encode(type, sequence, usuario, publicacion);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+            buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            buffer.flip();
+            long position = active.size();
+            while (buffer.hasRemaining()) {
+                position += active.write(buffer, position);
+            }
+            writeNextSequence(sequence + 1);
+
+            if (fsyncPolicy == UserMutationLog.FsyncPolicy.ALWAYS) {
+                active.force(false);
+            } else {
+                dirty = true;
+            }
+            if (active.size() >= segmentBytes) {
+                roll();
+            }
+            expected = stamp();
+            return sequence;
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Sella el segmento activo con su índice y abre el siguiente; con el bloqueo tomado
+     */
+    private void roll() throws IOException {
+        active.force(false);
+        active.close();
+        SegmentIndex.build(segmentPath(activeId), activeId, false).write(indexPath(activeId));
+        activeId++;
+        active = openActive(activeId);
+        if (sealedSegmentIds().size() >= mergeSegments) {
+            maintenance.execute(this::mergeQuietly);
+        }
+    }
+
+    /**
+     * Si otro proceso selló el segmento activo, pasa a escribir en el más reciente
+     */
+    private void reopenIfChanged() throws IOException {
+        if (Files.exists(indexPath(activeId)) || !Files.exists(segmentPath(activeId))) {
+            active.close();
+            List<Long> ids = segmentIds();
+            activeId = ids.isEmpty() ? 1 : ids.get(ids.size() - 1);
+            if (Files.exists(indexPath(activeId))) {
+                activeId++;
+            }
+            active = openActive(activeId);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (sequenceChannel != null) {
+            return;
+        }
+        Files.createDirectories(directory.resolve(MERGING_DIRECTORY));
+        sequenceChannel = FileChannel.open(directory.resolve(SEQUENCE_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock lock = sequenceChannel.lock();
+        try {
+            removeMergeLeftovers();
+            List<Long> ids = segmentIds();
+            if (ids.isEmpty() && Files.exists(Paths.get(LEGACY_FILE))) {
+                migrateLegacy();
+                ids = segmentIds();
+            }
+
+            activeId = ids.isEmpty() ? 1 : ids.get(ids.size() - 1);
+            if (Files.exists(indexPath(activeId))) {
+                activeId++;
+            }
+            active = openActive(activeId);
+            // Si el archivo de secuencia no llegó al disco antes de un fallo, se recupera del segmento activo
+            long[] maxSequence = {-1};
+            readSegment(segmentPath(activeId), record -> maxSequence[0] = Math.max(maxSequence[0], record.sequence));
+            if (readNextSequence() <= maxSequence[0]) {
+                writeNextSequence(maxSequence[0] + 1);
+            }
+            expected = stamp();
+        } finally {
+            lock.release();
+        }
+        startMaintenance();
+        if (sealedSegmentIds().size() >= mergeSegments) {
+            maintenance.execute(this::mergeQuietly);
+        }
+    }
+
+    private FileChannel openActive(long id) throws IOException {
+        Path path = segmentPath(id);
+        long validLength = readSegment(path, record -> { });
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (validLength < HEADER_BYTES) {
+            channel.truncate(0);
+            channel.write(ByteBuffer.allocate(HEADER_BYTES).putInt(0, MAGIC), 0);
+            channel.force(false);
+        } else if (channel.size() > validLength) {
+            // Descartar la cola de una escritura cortada
+            channel.truncate(validLength);
+        }
+        return channel;
+    }
+
+    private void startMaintenance() {
+        maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "muro-segment-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (fsyncPolicy == UserMutationLog.FsyncPolicy.INTERVAL) {
+            long fsyncMillis = Long.getLong("userauth.muro.fsyncMillis", 1000);
+            maintenance.scheduleWithFixedDelay(this::forceIfDirty, fsyncMillis, fsyncMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void forceIfDirty() {
+        try {
+            if (dirty && active != null) {
+                active.force(false);
+                sequenceChannel.force(false);
+                dirty = false;
+            }
+        } catch (IOException e) {
+            System.err.println("Error syncing muro: " + e.getMessage());
+        }
+    }
+
+    private void mergeQuietly() {
+        try {
+            merge();
+        } catch (IOException e) {
+            System.err.println("Error merging muro segments: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Convierte el antiguo data/muro.ser en el primer segmento sellado; con el bloqueo tomado
+     */
+    @SuppressWarnings("unchecked")
+    private void migrateLegacy() throws IOException {
+        Path legacy = Paths.get(LEGACY_FILE);
+        List<SocialCalendarApp.PublicacionMuro> publicaciones;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(legacy)))) {
+            publicaciones = (List<SocialCalendarApp.PublicacionMuro>) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unreadable muro file: " + legacy, e);
+        }
+
+        // La secuencia conserva el orden del archivo entre publicaciones con la misma fecha y hora
+        List<Entry> entries = new ArrayList<>(publicaciones.size());
+        for (SocialCalendarApp.PublicacionMuro publicacion : publicaciones) {
+            entries.add(new Entry(entries.size(), publicacion));
+        }
+        entries.sort(WALL_ORDER);
+        // Se escribe aparte y se mueve completo: un fallo a medias no deja un segmento parcial
+        Path staged = directory.resolve(MERGING_DIRECTORY).resolve(1 + SEGMENT_SUFFIX);
+        writeSegment(staged, entries);
+        SegmentIndex.build(staged, 1, true).write(indexPath(1));
+        Files.move(staged, segmentPath(1), StandardCopyOption.ATOMIC_MOVE);
+        writeNextSequence(entries.size());
+        Files.move(legacy, Paths.get(LEGACY_FILE + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Borra fusiones cortadas y los segmentos que una fusión ya cubre pero no llegó a borrar
+     * Una fusión cuyo segmento sigue bloqueado está en curso en otro proceso: se conservan su
+     * segmento y su índice
+     */
+    private void removeMergeLeftovers() throws IOException {
+        Path merging = directory.resolve(MERGING_DIRECTORY);
+        Set<String> running = new HashSet<>();
+        try (Stream<Path> staged = Files.list(merging)) {
+            for (Path segment : (Iterable<Path>) staged::iterator) {
+                String name = segment.getFileName().toString();
+                if (name.endsWith(SEGMENT_SUFFIX) && isMergeRunning(segment)) {
+                    running.add(name);
+                }
+            }
+        }
+        try (Stream<Path> leftovers = Files.list(merging)) {
+            for (Path leftover : (Iterable<Path>) leftovers::iterator) {
+                String name = leftover.getFileName().toString();
+                if (running.stream().noneMatch(name::startsWith)) {
+                    Files.deleteIfExists(leftover);
+                }
+            }
+        }
+        for (long id : sealedSegmentIds()) {
+            SegmentIndex index = readIndex(id);
+            for (long covered : segmentIds()) {
+                if (covered >= index.firstId && covered < id) {
+                    deleteSegment(covered);
+                }
+            }
+        }
+    }
+
+    /**
+     * Indica si una fusión en curso tiene bloqueado su segmento en preparación
+     */
+    private static boolean isMergeRunning(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            // La fusión es de otro almacén de este mismo proceso
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private List<Long> segmentIds() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    ids.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                }
+            }
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    private List<Long> sealedSegmentIds() throws IOException {
+        List<Long> sealed = new ArrayList<>();
+        for (long id : segmentIds()) {
+            if (Files.exists(indexPath(id))) {
+                sealed.add(id);
+            }
+        }
+        return sealed;
+    }
+
+    /**
+     * Lee el índice de un segmento sellado; si falta o no corresponde al segmento, lo reconstruye
+     */
+    private SegmentIndex readIndex(long id) throws IOException {
+        SegmentIndex index = SegmentIndex.read(indexPath(id));
+        if (index == null || index.segmentLength != Files.size(segmentPath(id))) {
+            index = SegmentIndex.build(segmentPath(id), index == null ? id : index.firstId, index != null && index.sorted);
+            index.write(indexPath(id));
+        }
+        return index;
+    }
+
+    private void deleteSegment(long id) throws IOException {
+        Files.deleteIfExists(indexPath(id));
+        Files.deleteIfExists(segmentPath(id));
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(id + SEGMENT_SUFFIX);
+    }
+
+    private Path indexPath(long id) {
+        return directory.resolve(id + INDEX_SUFFIX);
+    }
+
+    private long readNextSequence() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        int read = 0;
+        while (buffer.hasRemaining()) {
+            int n = sequenceChannel.read(buffer, read);
+            if (n < 0) {
+                return 0;
+            }
+            read += n;
+        }
+        return buffer.getLong(0);
+    }
+
+    private void writeNextSequence(long next) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(0, next);
+        while (buffer.hasRemaining()) {
+            sequenceChannel.write(buffer, buffer.position());
+        }
+    }
+
+    private Stamp stamp() throws IOException {
+        FileTime directoryModified = Files.getLastModifiedTime(directory);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(segmentPath(activeId), BasicFileAttributes.class);
+            return new Stamp(directoryModified, activeId, attributes.size(), attributes.lastModifiedTime());
+        } catch (NoSuchFileException e) {
+            return new Stamp(directoryModified, activeId, -1, null);
+        }
+    }
+
+    private static void collect(Record record, Map<Long, Entry> posts, Map<String, Long> tombstones) {
+        if (record.publicacion != null) {
+            // Una fusión cortada puede dejar la misma publicación en dos segmentos
+            posts.putIfAbsent(record.sequence, new Entry(record.sequence, record.publicacion));
+        } else {
+            tombstones.merge(record.usuario, record.sequence, Math::max);
+        }
+    }
+
+    private static boolean isLive(Entry entry, Map<String, Long> tombstones) {
+        Long tombstone = tombstones.get(entry.publicacion.getUsuario());
+        return tombstone == null || entry.sequence > tombstone;
+    }
+
+    private static final Comparator<Entry> WALL_ORDER = Comparator
+            .comparing((Entry entry) -> entry.publicacion, SocialCalendarApp.PublicacionMuro.POR_FECHA_Y_HORA)
+            .thenComparingLong(entry -> entry.sequence);
+
+    /**
+     * Escribe un segmento completo ya sellado (fusión o migración) y lo sincroniza con el disco
+     */
+    private static void writeSegment(Path path, List<Entry> entries) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeSegment(channel, entries);
+        }
+    }
+
+    private static void writeSegment(FileChannel channel, List<Entry> entries) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        buffer.putInt(MAGIC);
+        CRC32 crc = new CRC32();
+        for (Entry entry : entries) {
+            byte[] payload = encode(POST, entry.sequence, entry.publicacion.getUsuario(), entry.publicacion);
+            if (buffer.remaining() < RECORD_HEADER_BYTES + payload.length) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+                if (buffer.remaining() < RECORD_HEADER_BYTES + payload.length) {
+                    buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+                }
+            }
+            crc.reset();
+            crc.update(payload);
+            buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Registro leído de un segmento: una publicación o una lápida (publicacion null)
+     */
+    static final class Record {
+        final long offset;
+        final long sequence;
+        final String usuario;
+        final SocialCalendarApp.PublicacionMuro publicacion;
+
+        Record(long offset, long sequence, String usuario, SocialCalendarApp.PublicacionMuro publicacion) {
+            this.offset = offset;
+            this.sequence = sequence;
+            this.usuario = usuario;
+            this.publicacion = publicacion;
+        }
+    }
+
+    interface RecordConsumer {
+        void accept(Record record) throws IOException;
+    }
+
+    /**
+     * Lee los registros válidos de un segmento en orden
+     * @param path ruta del segmento
+     * @param consumer receptor de cada registro
+     * @return longitud en bytes de la parte válida (0 si no existe)
+     * @throws IOException si el archivo no se puede leer o no es un segmento del muro
+     */
+    static long readSegment(Path path, RecordConsumer consumer) throws IOException {
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            return 0;
+        }
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 64 * 1024))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a muro segment: " + path);
+            }
+            long validLength = HEADER_BYTES;
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] payload;
+                int expectedCrc;
+                try {
+                    int length = in.readInt();
+                    expectedCrc = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_BYTES) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != expectedCrc) {
+                    break;
+                }
+                consumer.accept(decode(validLength, payload));
+                validLength += RECORD_HEADER_BYTES + payload.length;
+            }
+            return validLength;
+        } catch (EOFException e) {
+            // Ni siquiera la cabecera está completa
+            return 0;
+        }
+    }
+
+    private static byte[] encode(byte type, long sequence, String usuario,
+                                 SocialCalendarApp.PublicacionMuro publicacion) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            out.writeLong(sequence);
+            out.writeUTF(usuario);
+            if (type == POST) {
+                out.writeUTF(publicacion.getMensaje());
+                out.writeLong(publicacion.getFecha().toEpochDay());
+                out.writeLong(publicacion.getHora().toNanoOfDay());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Record decode(long offset, byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            byte type = in.readByte();
+            long sequence = in.readLong();
+            String usuario = in.readUTF();
+            if (type != POST) {
+                return new Record(offset, sequence, usuario, null);
+            }
+            String mensaje = in.readUTF();
+            LocalDate fecha = LocalDate.ofEpochDay(in.readLong());
+            LocalTime hora = LocalTime.ofNanoOfDay(in.readLong());
+            return new Record(offset, sequence, usuario,
+                    new SocialCalendarApp.PublicacionMuro(usuario, mensaje, fecha, hora));
+        }
+    }
+
+    /**
+     * Índice de un segmento sellado
+     * Indica desde qué segmento cubre (una fusión cubre todos sus segmentos de entrada) y la
+     * longitud del segmento al sellarlo, con la que se detecta un índice que ya no le corresponde,
+     * más el número de publicaciones y su fecha y hora mínima y máxima. Las lecturas se sirven
+     * desde la memoria (MuroCache), así que no se guardan posiciones de publicaciones; el formato
+     * conserva el campo de entradas, siempre vacío, para leer los índices escritos antes
+     */
+    static final class SegmentIndex {
+        final long firstId;
+        final long segmentLength;
+        final boolean sorted;
+        final int postCount;
+        final long minKey;
+        final long maxKey;
+
+        SegmentIndex(long firstId, long segmentLength, boolean sorted, int postCount, long minKey, long maxKey) {
+            this.firstId = firstId;
+            this.segmentLength = segmentLength;
+            this.sorted = sorted;
+            this.postCount = postCount;
+            this.minKey = minKey;
+            this.maxKey = maxKey;
+        }
+
+        /**
+         * Clave ordenable de fecha y hora con resolución de minutos
+         * @param fecha fecha de la publicación
+         * @param hora hora de la publicación
+         * @return minutos desde la época
+         */
+        static long key(LocalDate fecha, LocalTime hora) {
+            return fecha.toEpochDay() * 24 * 60 + hora.getHour() * 60L + hora.getMinute();
+        }
+
+        static SegmentIndex build(Path segment, long firstId, boolean sorted) throws IOException {
+            long[] summary = {0, Long.MAX_VALUE, Long.MIN_VALUE};
+            long length = readSegment(segment, record -> {
+                if (record.publicacion == null) {
+                    return;
+                }
+                long key = key(record.publicacion.getFecha(), record.publicacion.getHora());
+                summary[0]++;
+                summary[1] = Math.min(summary[1], key);
+                summary[2] = Math.max(summary[2], key);
+            });
+            return new SegmentIndex(firstId, length, sorted, (int) summary[0], summary[1], summary[2]);
+        }
+
+        /**
+         * Lee un índice
+         * @return índice, o null si no existe o está dañado
+         */
+        static SegmentIndex read(Path path) throws IOException {
+            if (!Files.exists(path)) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                if (in.readInt() != INDEX_MAGIC) {
+                    return null;
+                }
+                long firstId = in.readLong();
+                long segmentLength = in.readLong();
+                boolean sorted = in.readBoolean();
+                int postCount = in.readInt();
+                long minKey = in.readLong();
+                long maxKey = in.readLong();
+                // Las entradas que siguen (índices anteriores) no se usan
+                return new SegmentIndex(firstId, segmentLength, sorted, postCount, minKey, maxKey);
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Escribe el índice de forma atómica (archivo temporal y renombrado)
+         */
+        void write(Path path) throws IOException {
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeLong(firstId);
+                out.writeLong(segmentLength);
+                out.writeBoolean(sorted);
+                out.writeInt(postCount);
+                out.writeLong(minKey);
+                out.writeLong(maxKey);
+                out.writeInt(0);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Estado observable de los segmentos: fecha de modificación del directorio (altas, bajas y
+     * renombrados de segmentos) más tamaño y fecha del segmento activo
+     */
+    private static final class Stamp {
+        final FileTime directoryModified;
+        final long activeId;
+        final long activeSize;
+        final FileTime activeModified;
+
+        Stamp(FileTime directoryModified, long activeId, long activeSize, FileTime activeModified) {
+            this.directoryModified = directoryModified;
+            this.activeId = activeId;
+            this.activeSize = activeSize;
+            this.activeModified = activeModified;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Stamp)) {
+                return false;
+            }
+            Stamp stamp = (Stamp) other;
+            return directoryModified.equals(stamp.directoryModified) && activeId == stamp.activeId
+                    && activeSize == stamp.activeSize && Objects.equals(activeModified, stamp.activeModified);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(directoryModified, activeId, activeSize, activeModified);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Hash de contraseñas con sal y coste adaptable (PBKDF2 con HMAC-SHA256)
+ * El número de iteraciones se calibra al arrancar para que cada verificación
+ * tarde aproximadamente el tiempo objetivo configurado en este equipo
+ * Formato almacenado: pbkdf2-sha256$iteraciones$salBase64$hashBase64
+ */
+class PasswordHasher {
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+    private static final int MIN_ITERATIONS = 10_000;
+    private static final int MAX_ITERATIONS = 10_000_000;
+    private static final int CALIBRATION_ITERATIONS = 20_000;
+
+    // Tiempo objetivo por verificación, configurable con -Duserauth.hash.targetMillis
+    private static final long DEFAULT_TARGET_MILLIS = 50;
+
+    private static volatile PasswordHasher defaultHasher;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Constructor con un número fijo de iteraciones
+     * @param iterations iteraciones de PBKDF2 para los hashes nuevos
+     */
+    public PasswordHasher(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Iterations must be positive");
+        }
+        this.iterations = iterations;
+    }
+
+    /**
+     * Obtiene el hasher compartido, calibrándolo la primera vez que se usa
+     * @return hasher calibrado para el tiempo objetivo configurado
+     */
+    public static PasswordHasher getDefault() {
+        PasswordHasher hasher = defaultHasher;
+        if (hasher == null) {
+            synchronized (PasswordHasher.class) {
+                hasher = defaultHasher;
+                if (hasher == null) {
+                    long target = Long.getLong("userauth.hash.targetMillis", DEFAULT_TARGET_MILLIS);
+                    hasher = calibrate(target);
+                    defaultHasher = hasher;
+                }
+            }
+        }
+        return hasher;
+    }
+
+    /**
+     * Mide el coste de PBKDF2 en el equipo actual y elige las iteraciones para el tiempo objetivo
+     * @param targetMillis milisegundos deseados por verificación
+     * @return hasher con el número de iteraciones calibrado
+     */
+    public static PasswordHasher calibrate(long targetMillis) {
+        byte[] salt = new byte[SALT_BYTES];
+        char[] sample = "calibration-password".toCharArray();
+
+        // Calentar el JIT antes de medir
+        for (int i = 0; i < 3; i++) {
+            derive(sample, salt, CALIBRATION_ITERATIONS / 4);
+        }
+
+        long start = System.nanoTime();
+        derive(sample, salt, CALIBRATION_ITERATIONS);
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+
+        double scaled = (double) CALIBRATION_ITERATIONS * targetMillis * 1_000_000L / elapsedNanos;
+        int iterations = (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, scaled));
+        return new PasswordHasher(iterations / 1000 * 1000);
+    }
+
+    /**
+     * Genera el hash con sal de una contraseña
+     * @param password contraseña en claro
+     * @return hash codificado listo para almacenar
+     */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] key = derive(password.toCharArray(), salt, iterations);
+
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(key);
+    }
+
+    /**
+     * Verifica una contraseña contra el valor almacenado
+     * Los registros antiguos sin hash se comparan en claro para poder migrarlos
+     * @param password contraseña proporcionada
+     * @param stored valor almacenado (hash codificado o contraseña en claro heredada)
+     * @return true si la contraseña coincide
+     */
+    public boolean verify(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8));
+        }
+
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        try {
+            int storedIterations = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+            byte[] actual = derive(password.toCharArray(), salt, storedIterations);
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Indica si el valor almacenado debe regenerarse (en claro o con menos iteraciones que las actuales)
+     * @param stored valor almacenado
+     * @return true si conviene volver a calcular el hash tras un login correcto
+     */
+    public boolean needsRehash(String stored) {
+        if (!isHashed(stored)) {
+            return true;
+        }
+        String[] parts = stored.split("\\$");
+        try {
+            return parts.length != 4 || Integer.parseInt(parts[1]) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Indica si un valor almacenado ya es un hash de este formato
+     * @param stored valor almacenado
+     * @return true si es un hash, false si es una contraseña heredada en claro
+     */
+    public static boolean isHashed(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /**
+     * Obtiene el número de iteraciones usado para los hashes nuevos
+     * @return iteraciones de PBKDF2
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    private static byte[] derive(char[] password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, KEY_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Password hashing unavailable: " + e.getMessage(), e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ejecutor acotado para las operaciones costosas de hash de contraseñas
+ * Limita los hilos dedicados y la cola de espera para que una ráfaga de logins
+ * no pueda ocupar todos los núcleos; las peticiones que no caben se rechazan
+ */
+class PasswordVerifier {
+    private static volatile PasswordVerifier defaultVerifier;
+
+    private final ThreadPoolExecutor executor;
+    // Pool fork-join compartido por los lotes que usan este verificador; sus hojas esperan al
+    // ejecutor, así que no necesita más hilos que él. Sus hilos son demonio y terminan al quedar ociosos
+    private final ForkJoinPool bulkPool;
+
+    /**
+     * Constructor con límites explícitos
+     * @param threads número máximo de hilos que calculan hashes a la vez
+     * @param queueLimit número máximo de verificaciones en espera
+     */
+    public PasswordVerifier(int threads, int queueLimit) {
+        if (threads < 1 || queueLimit < 1) {
+            throw new IllegalArgumentException("Threads and queue limit must be positive");
+        }
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueLimit), new HashingThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        // -Duserauth.bulk.parallelism solo puede reducir el paralelismo por debajo de los hilos de hash
+        this.bulkPool = new ForkJoinPool(Math.max(1,
+                Math.min(threads, Integer.getInteger("userauth.bulk.parallelism", threads))));
+    }
+
+    /**
+     * Obtiene el verificador compartido configurado con propiedades del sistema
+     * -Duserauth.hash.threads (por defecto la mitad de los núcleos) y -Duserauth.hash.queue (por defecto 64)
+     * @return verificador compartido
+     */
+    public static PasswordVerifier getDefault() {
+        PasswordVerifier verifier = defaultVerifier;
+        if (verifier == null) {
+            synchronized (PasswordVerifier.class) {
+                verifier = defaultVerifier;
+                if (verifier == null) {
+                    int cores = Runtime.getRuntime().availableProcessors();
+                    int threads = Integer.getInteger("userauth.hash.threads", Math.max(1, cores / 2));
+                    int queue = Integer.getInteger("userauth.hash.queue", 64);
+                    verifier = new PasswordVerifier(threads, queue);
+                    defaultVerifier = verifier;
+                }
+            }
+        }
+        return verifier;
+    }
+
+    /**
+     * Verifica la contraseña de un usuario en el ejecutor acotado
+     * Si el ejecutor está saturado la verificación se rechaza y cuenta como fallida
+     * @param user usuario a verificar
+     * @param password contraseña proporcionada
+     * @return true si la contraseña es correcta
+     */
+    public boolean verify(User user, String password) {
+        Boolean result = run(() -> user.authenticate(password));
+        return result != null && result;
+    }
+
+    /**
+     * Calcula y asigna el hash de una nueva contraseña en el ejecutor acotado
+     * @param user usuario al que cambiar la contraseña
+     * @param newPassword nueva contraseña en claro
+     * @return true si se asignó, false si el ejecutor estaba saturado
+     */
+    public boolean updatePassword(User user, String newPassword) {
+        Boolean result = run(() -> {
+            user.setPassword(newPassword);
+            return true;
+        });
+        return result != null && result;
+    }
+
+    /**
+     * Obtiene el pool en el que se reparten los lotes de verificaciones
+     * @return pool fork-join con tantos hilos como el ejecutor de hash como máximo
+     */
+    public ForkJoinPool getBulkPool() {
+        return bulkPool;
+    }
+
+    /**
+     * Obtiene el número máximo de hashes que se calculan a la vez
+     * @return hilos del ejecutor
+     */
+    public int getThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Obtiene el número de verificaciones en espera
+     * @return tamaño actual de la cola
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    private <T> T run(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Fábrica de hilos demonio con nombre para el ejecutor de hash
+     */
+    private static class HashingThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "password-hash-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
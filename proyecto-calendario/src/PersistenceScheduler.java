@@ -0,0 +1,316 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Planificador de persistencia con escritura agrupada (group commit)
+ * Las mutaciones se encolan sin tocar el disco y un hilo en segundo plano las escribe juntas:
+ * tras la primera mutación pendiente espera la ventana configurada para acumular las siguientes
+ * y las registra con una sola escritura (o un único guardado completo si el repositorio no
+ * tiene registro incremental). flush() es la barrera para el cierre: espera a que todo lo
+ * encolado antes de llamarlo esté escrito
+ */
+class PersistenceScheduler {
+    private final UserRepository repository;
+    private final Supplier<UserRepository.UserData> snapshot;
+    private final long windowNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    // Estado protegido por lock
+    private List<UserRepository.Mutation> pending = new ArrayList<>();
+    private boolean fullSaveRequested;
+    private boolean flushRequested;
+    private boolean closed;
+    private long submittedSequence;
+    private long writtenSequence;
+    private long failedSequence;
+    private RuntimeException lastFailure;
+    private boolean appendSupported = true;
+
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder flushedMutations = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final LongAdder failedFlushes = new LongAdder();
+
+    private final Thread writer;
+
+    /**
+     * Constructor del planificador; arranca el hilo de escritura
+     * @param repository repositorio en el que se escriben las mutaciones
+     * @param snapshot estado completo, para los repositorios sin registro incremental
+     * @param windowMillis milisegundos que se esperan para agrupar mutaciones (0 escribe en cuanto llegan)
+     */
+    public PersistenceScheduler(UserRepository repository, Supplier<UserRepository.UserData> snapshot,
+                                long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Persistence window must not be negative");
+        }
+        this.repository = repository;
+        this.snapshot = snapshot;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.writer = new Thread(this::runWriter, "user-persistence");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Crea un planificador con la ventana de la propiedad userauth.persist.windowMillis (20)
+     * @param repository repositorio en el que se escriben las mutaciones
+     * @param snapshot estado completo, para los repositorios sin registro incremental
+     * @return planificador configurado
+     */
+    public static PersistenceScheduler fromSystemProperties(UserRepository repository,
+                                                            Supplier<UserRepository.UserData> snapshot) {
+        return new PersistenceScheduler(repository, snapshot, Long.getLong("userauth.persist.windowMillis", 20));
+    }
+
+    /**
+     * Encola una mutación para la próxima escritura; no bloquea por el disco
+     * @param mutation mutación a registrar
+     */
+    public void submit(UserRepository.Mutation mutation) {
+        lock.lock();
+        try {
+            checkOpen();
+            pending.add(mutation);
+            submittedSequence++;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marca el estado completo como pendiente de guardar en la próxima escritura
+     */
+    public void markDirty() {
+        lock.lock();
+        try {
+            checkOpen();
+            fullSaveRequested = true;
+            submittedSequence++;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Espera a que todo lo encolado antes de la llamada esté escrito, sin esperar la ventana
+     * @throws RuntimeException si la escritura de esas mutaciones falla (se reintentarán después)
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            long target = submittedSequence;
+            long failuresBefore = failedFlushes.sum();
+            while (writtenSequence < target) {
+                if (failedFlushes.sum() != failuresBefore && failedSequence >= target) {
+                    throw lastFailure;
+                }
+                flushRequested = true;
+                work.signal();
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Escribe lo pendiente y detiene el hilo de escritura; las mutaciones posteriores se rechazan
+     */
+    public void close() {
+        flush();
+        lock.lock();
+        try {
+            closed = true;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Obtiene el número de escrituras realizadas
+     * @return escrituras completadas
+     */
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    /**
+     * Obtiene el número de mutaciones escritas
+     * @return mutaciones incluidas en las escrituras completadas
+     */
+    public long getFlushedMutationCount() {
+        return flushedMutations.sum();
+    }
+
+    /**
+     * Obtiene el mayor número de mutaciones escritas de una vez
+     * @return tamaño del lote más grande
+     */
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    /**
+     * Obtiene la duración media de una escritura
+     * @return milisegundos por escritura (0 si aún no hubo ninguna)
+     */
+    public double getAverageFlushMillis() {
+        long flushes = flushCount.sum();
+        return flushes == 0 ? 0 : flushNanos.sum() / 1e6 / flushes;
+    }
+
+    /**
+     * Obtiene la duración de la escritura más lenta
+     * @return milisegundos de la escritura más lenta
+     */
+    public double getMaxFlushMillis() {
+        return maxFlushNanos.get() / 1e6;
+    }
+
+    /**
+     * Genera un resumen de las escrituras realizadas
+     * @return información de escrituras, tamaño de los lotes y latencia
+     */
+    public String getStats() {
+        long flushes = getFlushCount();
+        return String.format("Persistence flushes: %d | mutations: %d | avg batch: %.1f | max batch: %d"
+                        + " | avg flush: %.2f ms | max flush: %.2f ms | failed: %d",
+                flushes, getFlushedMutationCount(), flushes == 0 ? 0.0 : (double) getFlushedMutationCount() / flushes,
+                getMaxBatchSize(), getAverageFlushMillis(), getMaxFlushMillis(), failedFlushes.sum());
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Persistence scheduler is closed");
+        }
+    }
+
+    /**
+     * Bucle del hilo de escritura: espera trabajo, deja pasar la ventana y escribe el lote
+     */
+    private void runWriter() {
+        while (true) {
+            List<UserRepository.Mutation> batch;
+            boolean fullSave;
+            long target;
+            lock.lock();
+            try {
+                while (writtenSequence == submittedSequence) {
+                    if (closed) {
+                        return;
+                    }
+                    work.awaitUninterruptibly();
+                }
+                // Ventana de agrupación, salvo que alguien espere en flush()
+                long remaining = windowNanos;
+                while (remaining > 0 && !flushRequested && !closed) {
+                    try {
+                        remaining = work.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        remaining = 0;
+                    }
+                }
+                flushRequested = false;
+                batch = pending;
+                pending = new ArrayList<>();
+                fullSave = fullSaveRequested || !appendSupported;
+                fullSaveRequested = false;
+                target = submittedSequence;
+            } finally {
+                lock.unlock();
+            }
+
+            RuntimeException failure = null;
+            long start = System.nanoTime();
+            try {
+                write(batch, fullSave);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            long elapsed = System.nanoTime() - start;
+
+            lock.lock();
+            try {
+                if (failure == null) {
+                    writtenSequence = target;
+                    flushCount.increment();
+                    flushedMutations.add(batch.size());
+                    flushNanos.add(elapsed);
+                    maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+                    maxBatchSize.accumulateAndGet(batch.size(), Math::max);
+                } else {
+                    // El lote vuelve delante de lo encolado mientras tanto y se reintenta en la próxima ventana
+                    System.err.println("Error saving data: " + failure.getMessage());
+                    batch.addAll(pending);
+                    pending = batch;
+                    fullSaveRequested |= fullSave;
+                    failedSequence = target;
+                    lastFailure = failure;
+                    failedFlushes.increment();
+                }
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (failure != null && !closed) {
+                pauseAfterFailure();
+            }
+        }
+    }
+
+    /**
+     * Escribe un lote: con registro incremental, todas las mutaciones de una vez; si no, el estado completo
+     */
+    private void write(List<UserRepository.Mutation> batch, boolean fullSave) {
+        if (!fullSave && !batch.isEmpty()) {
+            if (repository.appendAll(coalesceCounters(batch))) {
+                return;
+            }
+            appendSupported = false;
+        }
+        UserRepository.UserData data = snapshot.get();
+        repository.save(data.users, data.admins, data.userCounter);
+    }
+
+    /**
+     * El contador de nombres solo avanza: de los registros de contador de un lote basta el último
+     */
+    private static List<UserRepository.Mutation> coalesceCounters(List<UserRepository.Mutation> batch) {
+        int lastCounter = -1;
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.get(i).type == UserRepository.Mutation.Type.COUNTER) {
+                lastCounter = i;
+            }
+        }
+        List<UserRepository.Mutation> coalesced = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            UserRepository.Mutation mutation = batch.get(i);
+            if (mutation.type != UserRepository.Mutation.Type.COUNTER || i == lastCounter) {
+                coalesced.add(mutation);
+            }
+        }
+        return coalesced;
+    }
+
+    private void pauseAfterFailure() {
+        try {
+            Thread.sleep(Math.max(100, TimeUnit.NANOSECONDS.toMillis(windowNanos)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
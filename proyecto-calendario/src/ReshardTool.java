@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Herramienta sin conexión para cambiar el número de shards del repositorio de archivos
+ * Uso (con la aplicación detenida): java ReshardTool <shards>
+ *
+ * Carga el estado actual con su número de shards (incluido el registro de mutaciones), escribe
+ * la disposición nueva en un directorio aparte y solo entonces la intercambia por la anterior,
+ * de modo que una interrupción deja intactos los datos originales. Con 1 shard vuelve al
+ * archivo único data/userdata.bin
+ */
+class ReshardTool {
+    private static final Path STAGING_DIRECTORY = Paths.get(UserSnapshotStore.SHARD_DIRECTORY + ".reshard");
+    private static final Path PREVIOUS_DIRECTORY = Paths.get(UserSnapshotStore.SHARD_DIRECTORY + ".previous");
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java ReshardTool <shards>");
+            System.exit(2);
+        }
+        int target = Integer.parseInt(args[0]);
+        int current = UserSnapshotStore.existingShardCount();
+
+        FileUserRepository source = new FileUserRepository(UserMutationLog.FsyncPolicy.ALWAYS, Long.MAX_VALUE, current);
+        UserRepository.UserData data = source.load();
+        System.out.println("Loaded " + data.users.size() + " users and " + data.admins.size()
+                + " admins from " + current + " shard(s)");
+
+        reshard(data, current, target);
+        // El registro ya está incorporado al snapshot nuevo: vaciarlo evita reproducirlo otra vez
+        // (el guardado no reescribe los shards, que no cambian)
+        new FileUserRepository(UserMutationLog.FsyncPolicy.ALWAYS, Long.MAX_VALUE, target)
+                .save(data.users, data.admins, data.userCounter);
+        System.out.println("Wrote " + target + " shard(s)");
+    }
+
+    /**
+     * Escribe los datos con el número de shards indicado y elimina la disposición anterior
+     * @param data estado completo
+     * @param current número de shards actual
+     * @param target número de shards nuevo
+     * @throws IOException si la escritura o el intercambio de archivos falla
+     */
+    static void reshard(UserRepository.UserData data, int current, int target) throws IOException {
+        Path shardDirectory = Paths.get(UserSnapshotStore.SHARD_DIRECTORY);
+        if (target == 1) {
+            // El archivo único se escribe de forma atómica; los shards se borran después
+            new UserSnapshotStore(1).write(data);
+            deleteDirectory(shardDirectory);
+            return;
+        }
+
+        deleteDirectory(STAGING_DIRECTORY);
+        new UserSnapshotStore(target, STAGING_DIRECTORY).write(data);
+        deleteDirectory(PREVIOUS_DIRECTORY);
+        if (Files.exists(shardDirectory)) {
+            Files.move(shardDirectory, PREVIOUS_DIRECTORY, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(STAGING_DIRECTORY, shardDirectory, StandardCopyOption.ATOMIC_MOVE);
+        deleteDirectory(PREVIOUS_DIRECTORY);
+        if (current == 1) {
+            // El archivo único ya no se lee con shards: se conserva como copia de la migración
+            Path single = Paths.get(UserSnapshotStore.SINGLE_FILE);
+            if (Files.exists(single)) {
+                Files.move(single, Paths.get(UserSnapshotStore.SINGLE_FILE + ".presharding"),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
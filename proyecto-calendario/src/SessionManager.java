@@ -0,0 +1,151 @@
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gestor de sesiones autenticadas
+ * Emite tokens opacos tras un login correcto y los guarda en una tabla concurrente,
+ * de modo que validar una sesión no requiere volver a calcular el hash de la contraseña
+ * Los vencimientos se gestionan con una rueda de temporización en lugar de un temporizador por token
+ */
+class SessionManager {
+    private static final int TOKEN_BYTES = 32;
+    private static final long TICK_MILLIS = 1000;
+    private static final int WHEEL_SIZE = 512;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long idleTimeoutMillis;
+    private final long absoluteTimeoutMillis;
+    private final HashedTimingWheel expiryWheel;
+
+    /**
+     * Constructor con los tiempos de expiración
+     * @param idleTimeoutMillis tiempo máximo sin actividad antes de expirar la sesión
+     * @param absoluteTimeoutMillis duración máxima de la sesión desde que se emite
+     */
+    public SessionManager(long idleTimeoutMillis, long absoluteTimeoutMillis) {
+        if (idleTimeoutMillis <= 0 || absoluteTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Session timeouts must be positive");
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.absoluteTimeoutMillis = absoluteTimeoutMillis;
+        this.expiryWheel = new HashedTimingWheel(TICK_MILLIS, WHEEL_SIZE, this::expire);
+    }
+
+    /**
+     * Crea un gestor con los tiempos de las propiedades del sistema
+     * -Duserauth.session.idleMinutes (por defecto 30) y -Duserauth.session.absoluteMinutes (por defecto 480)
+     * @return gestor de sesiones configurado
+     */
+    public static SessionManager fromSystemProperties() {
+        long idle = Long.getLong("userauth.session.idleMinutes", 30);
+        long absolute = Long.getLong("userauth.session.absoluteMinutes", 480);
+        return new SessionManager(TimeUnit.MINUTES.toMillis(idle), TimeUnit.MINUTES.toMillis(absolute));
+    }
+
+    /**
+     * Emite un token de sesión para un usuario autenticado
+     * @param user usuario autenticado
+     * @return token opaco de sesión
+     */
+    public String issue(User user) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        long now = System.currentTimeMillis();
+        Session session = new Session(user, now + absoluteTimeoutMillis, now);
+        sessions.put(token, session);
+        expiryWheel.schedule(token, session.deadline(idleTimeoutMillis));
+        return token;
+    }
+
+    /**
+     * Valida un token y renueva su tiempo de inactividad
+     * @param token token de sesión
+     * @return el usuario de la sesión o null si el token no existe o ha expirado
+     */
+    public User validate(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now >= session.deadline(idleTimeoutMillis)) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.lastAccessMillis = now;
+        return session.user;
+    }
+
+    /**
+     * Cierra una sesión
+     * @param token token de sesión a invalidar
+     */
+    public void invalidate(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    /**
+     * Cierra todas las sesiones de un usuario (por ejemplo, al eliminar su cuenta)
+     * @param username nombre del usuario
+     */
+    public void invalidateUser(String username) {
+        sessions.values().removeIf(session -> session.user.getUsername().equals(username));
+    }
+
+    /**
+     * Obtiene el número de sesiones activas
+     * @return cantidad de sesiones en la tabla
+     */
+    public int getActiveSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Llamado por la rueda cuando vence la fecha programada de un token
+     * Si la sesión tuvo actividad desde entonces, se vuelve a programar para su nuevo vencimiento
+     * @param token token vencido
+     */
+    private void expire(String token) {
+        Session session = sessions.get(token);
+        if (session == null) {
+            return;
+        }
+        long deadline = session.deadline(idleTimeoutMillis);
+        if (System.currentTimeMillis() >= deadline) {
+            sessions.remove(token, session);
+        } else {
+            expiryWheel.schedule(token, deadline);
+        }
+    }
+
+    /**
+     * Datos de una sesión activa
+     */
+    private static final class Session {
+        final User user;
+        final long absoluteDeadlineMillis;
+        volatile long lastAccessMillis;
+
+        Session(User user, long absoluteDeadlineMillis, long lastAccessMillis) {
+            this.user = user;
+            this.absoluteDeadlineMillis = absoluteDeadlineMillis;
+            this.lastAccessMillis = lastAccessMillis;
+        }
+
+        long deadline(long idleTimeoutMillis) {
+            return Math.min(lastAccessMillis + idleTimeoutMillis, absoluteDeadlineMillis);
+        }
+    }
+}
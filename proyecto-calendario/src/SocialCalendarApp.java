@@ -1,12 +1,16 @@
 import java.util.*;
 import java.io.*;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 
 public class SocialCalendarApp {
-    public static List<PublicacionMuro> muro = new ArrayList<>();
+    // Publicaciones por página al ver el muro: la memoria no depende del tamaño del muro
+    private static final int MURO_PAGE_SIZE = 10;
+
     private User currentUser;
     private List<Evento> eventos;
     private Scanner scanner;
@@ -64,6 +68,9 @@ public class SocialCalendarApp {
     // Clase para las publicaciones del muro con fecha y hora
     public static class PublicacionMuro implements Serializable {
         private static final long serialVersionUID = 1L;
+        // Orden del muro: por fecha y, dentro del mismo día, por hora
+        public static final Comparator<PublicacionMuro> POR_FECHA_Y_HORA =
+                Comparator.comparing(PublicacionMuro::getFecha).thenComparing(PublicacionMuro::getHora);
         private String usuario;
         private String mensaje;
         private LocalDate fecha;
@@ -122,7 +129,6 @@ public class SocialCalendarApp {
         this.currentUser = user;
         this.eventos = loadEventos();
         this.scanner = new Scanner(System.in);
-        loadMuro();
     }
     
     public void start() {
@@ -150,6 +156,9 @@ public class SocialCalendarApp {
                     mostrarMuro();
                     break;
                 case 6:
+                    buscarEnMuro();
+                    break;
+                case 7:
                     System.out.println("¡Hasta luego!");
                     return;
                 default:
@@ -170,9 +179,10 @@ public class SocialCalendarApp {
         System.out.println("3. Eliminar evento");
         System.out.println("4. Publicar en muro");
         System.out.println("5. Ver muro social");
-        System.out.println("6. Salir");
+        System.out.println("6. Buscar en el muro");
+        System.out.println("7. Salir");
         System.out.println("=".repeat(40));
-        System.out.print("Selecciona una opción (1-6): ");
+        System.out.print("Selecciona una opción (1-7): ");
     }
     
     private int obtenerOpcion() {
@@ -341,45 +351,150 @@ public class SocialCalendarApp {
             return;
         }
         
-        // Crear y guardar publicación
+        // Crear y guardar publicación (se inserta ya ordenada por fecha y hora)
         PublicacionMuro nuevaPublicacion = new PublicacionMuro(currentUser.getUsername(), mensaje, fecha, hora);
-        muro.add(nuevaPublicacion);
-        
-        // Ordenar publicaciones por fecha y hora
-        muro.sort((p1, p2) -> {
-            int fechaComparacion = p1.getFecha().compareTo(p2.getFecha());
-            if (fechaComparacion == 0) {
-                return p1.getHora().compareTo(p2.getHora());
-            }
-            return fechaComparacion;
-        });
-        
-        saveMuro();
+        MuroCache.getInstance().add(nuevaPublicacion);
         System.out.println("✓ Publicación agregada al muro social.");
     }
     
     public void mostrarMuro() {
         System.out.println("\n--- Muro Social ---");
+        MuroCache cache = MuroCache.getInstance();
         
-        if (muro.isEmpty()) {
+        if (cache.size() == 0) {
             System.out.println("El muro está vacío.");
             return;
         }
         
-        System.out.println("Total de publicaciones: " + muro.size());
-        System.out.println("=".repeat(60));
+        System.out.println("Total de publicaciones: " + cache.size());
+        System.out.print("¿Ver primero las más recientes? (s/n): ");
+        boolean newestFirst = !scanner.nextLine().trim().equalsIgnoreCase("n");
+        
+        // Se recorre de página en página: solo se formatean las publicaciones que se muestran
+        Iterator<PublicacionMuro> publicaciones = cache.iterator(null, newestFirst);
+        int pagina = 1;
+        while (true) {
+            System.out.println("=".repeat(60) + "\nPágina " + pagina);
+            if (mostrarPagina(publicaciones) == 0) {
+                System.out.println("No hay publicaciones desde esa fecha.");
+            }
+            
+            boolean hayMas = publicaciones.hasNext();
+            System.out.print(hayMas
+                    ? "Enter: siguiente página | f: ir a fecha | x: salir: "
+                    : "Fin del muro. f: ir a fecha | Enter: salir: ");
+            String opcion = scanner.nextLine().trim();
+            if (opcion.equalsIgnoreCase("f")) {
+                LocalDate fecha = leerFecha("Fecha (dd/mm/yyyy): ");
+                if (fecha != null) {
+                    publicaciones = cache.iterator(fecha, newestFirst);
+                    pagina = 1;
+                }
+            } else if (hayMas && opcion.isEmpty()) {
+                pagina++;
+            } else {
+                return;
+            }
+        }
+    }
+    
+    // Publicaciones de la semana actual, de un intervalo de fechas, a partir de ahora, de un usuario o por palabras
+    public void buscarEnMuro() {
+        System.out.println("\n--- Buscar en el Muro ---");
+        System.out.println("1. Esta semana");
+        System.out.println("2. Entre dos fechas");
+        System.out.println("3. Próximas (desde ahora)");
+        System.out.println("4. De un usuario");
+        System.out.println("5. Por palabras");
+        System.out.print("Selecciona una opción (1-5): ");
+        
+        MuroCache cache = MuroCache.getInstance();
+        Iterator<PublicacionMuro> publicaciones;
+        switch (obtenerOpcion()) {
+            case 1:
+                LocalDate lunes = LocalDate.now().with(DayOfWeek.MONDAY);
+                System.out.println("Semana del " + lunes.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
+                publicaciones = cache.between(lunes.atStartOfDay(), lunes.plusWeeks(1).atStartOfDay()).iterator();
+                break;
+            case 2:
+                LocalDate desde = leerFecha("Desde (dd/mm/yyyy): ");
+                LocalDate hasta = desde == null ? null : leerFecha("Hasta, incluida (dd/mm/yyyy): ");
+                if (hasta == null) {
+                    return;
+                }
+                if (hasta.isBefore(desde)) {
+                    System.out.println("Error: La fecha final es anterior a la inicial.");
+                    return;
+                }
+                publicaciones = cache.between(desde.atStartOfDay(), hasta.plusDays(1).atStartOfDay()).iterator();
+                break;
+            case 3:
+                publicaciones = cache.upcoming(LocalDateTime.now());
+                break;
+            case 4:
+                System.out.print("Usuario (vacío para ti): ");
+                String usuario = scanner.nextLine().trim();
+                if (usuario.isEmpty()) {
+                    usuario = currentUser.getUsername();
+                }
+                Collection<PublicacionMuro> delUsuario = cache.getPublicacionesDe(usuario);
+                System.out.println("Publicaciones de " + usuario + ": " + delUsuario.size());
+                publicaciones = delUsuario.iterator();
+                break;
+            case 5:
+                System.out.println("Varias palabras: deben aparecer todas | OR: cualquiera | palabra*: prefijo");
+                System.out.print("Buscar: ");
+                List<PublicacionMuro> encontradas = cache.buscar(scanner.nextLine());
+                System.out.println("Publicaciones encontradas: " + encontradas.size());
+                publicaciones = encontradas.iterator();
+                break;
+            default:
+                System.out.println("Opción inválida.");
+                return;
+        }
         
-        for (PublicacionMuro publicacion : muro) {
-            System.out.println(publicacion.toString());
+        int pagina = 1;
+        while (true) {
+            System.out.println("=".repeat(60) + "\nPágina " + pagina);
+            if (mostrarPagina(publicaciones) == 0 && pagina == 1) {
+                System.out.println("No hay publicaciones.");
+            }
+            if (!publicaciones.hasNext()) {
+                return;
+            }
+            System.out.print("Enter: siguiente página | x: salir: ");
+            if (!scanner.nextLine().trim().isEmpty()) {
+                return;
+            }
+            pagina++;
+        }
+    }
+    
+    // Muestra hasta MURO_PAGE_SIZE publicaciones del iterador y devuelve cuántas mostró
+    private int mostrarPagina(Iterator<PublicacionMuro> publicaciones) {
+        int mostradas = 0;
+        while (mostradas < MURO_PAGE_SIZE && publicaciones.hasNext()) {
+            System.out.println(publicaciones.next().toString());
             System.out.println("-".repeat(40));
+            mostradas++;
+        }
+        return mostradas;
+    }
+    
+    private LocalDate leerFecha(String mensaje) {
+        System.out.print(mensaje);
+        try {
+            return LocalDate.parse(scanner.nextLine().trim(), DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+        } catch (DateTimeParseException e) {
+            System.out.println("Error: Formato de fecha inválido. Usa dd/mm/yyyy");
+            return null;
         }
     }
     
     // Método para eliminar eventos y publicaciones de un usuario (para administradores)
     public void eliminarEventoMuro(String userToRemove) {
         // Eliminar publicaciones del muro del usuario
-        muro.removeIf(publicacion -> publicacion.getUsuario().equals(userToRemove));
-        saveMuro();
+        MuroCache.getInstance().removeByUser(userToRemove);
         
         // Eliminar archivo de eventos del usuario
         String eventoFile = "data/eventos_" + userToRemove + ".txt";
@@ -449,36 +564,11 @@ public class SocialCalendarApp {
         return eventosLoad;
     }
     
-    @SuppressWarnings("unchecked")
+    /**
+     * Carga el muro en la caché compartida si aún no está cargado o si el archivo cambió
+     * Las sesiones leen siempre de la caché; llamarlo solo adelanta la primera lectura
+     */
     public static void loadMuro() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream("data/muro.ser"))) {
-            muro = (List<PublicacionMuro>) ois.readObject();
-            
-            // Ordenar publicaciones después de cargar
-            muro.sort((p1, p2) -> {
-                int fechaComparacion = p1.getFecha().compareTo(p2.getFecha());
-                if (fechaComparacion == 0) {
-                    return p1.getHora().compareTo(p2.getHora());
-                }
-                return fechaComparacion;
-            });
-            
-        } catch (FileNotFoundException e) {
-            muro = new ArrayList<>();
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Error loading muro: " + e.getMessage());
-            muro = new ArrayList<>();
-        }
-    }
-    
-    public static void saveMuro() {
-        try {
-            new File("data").mkdirs();
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("data/muro.ser"))) {
-                oos.writeObject(muro);
-            }
-        } catch (IOException e) {
-            System.err.println("Error saving muro: " + e.getMessage());
-        }
+        MuroCache.getInstance().getPublicaciones();
     }
 }
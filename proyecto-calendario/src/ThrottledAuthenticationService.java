@@ -0,0 +1,136 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Decorador del servicio de autenticación que aplica el limitador de intentos
+ * Los intentos rechazados devuelven null sin llegar a calcular ningún hash
+ */
+class ThrottledAuthenticationService implements AuthenticationService {
+    private final AuthenticationService delegate;
+    private final LoginThrottle throttle;
+
+    /**
+     * Constructor del decorador
+     * @param delegate servicio de autenticación real
+     * @param throttle limitador de intentos de login
+     */
+    public ThrottledAuthenticationService(AuthenticationService delegate, LoginThrottle throttle) {
+        this.delegate = delegate;
+        this.throttle = throttle;
+    }
+
+    /**
+     * Autentica solo si el limitador admite el intento para ese usuario
+     * Un intento admitido que tiene éxito devuelve el token que reservó en el bucket del usuario
+     * @param username nombre de usuario
+     * @param password contraseña
+     * @param userType tipo de usuario ("admin" o "user")
+     * @return el usuario autenticado o null si falla o se rechaza el intento
+     */
+    @Override
+    public User authenticate(String username, String password, String userType) {
+        if (!throttle.tryAcquire(username)) {
+            return null;
+        }
+        User user = delegate.authenticate(username, password, userType);
+        if (user != null) {
+            throttle.recordSuccess(username);
+        }
+        return user;
+    }
+
+    /**
+     * Variante asíncrona: el limitador se consulta en el hilo del llamador y
+     * un intento rechazado se completa de inmediato sin ocupar el ejecutor
+     * @param username nombre de usuario
+     * @param password contraseña
+     * @param userType tipo de usuario ("admin" o "user")
+     * @return futuro con el usuario autenticado o null si falla o se rechaza el intento
+     */
+    @Override
+    public CompletableFuture<User> authenticateAsync(String username, String password, String userType) {
+        if (!throttle.tryAcquire(username)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return delegate.authenticateAsync(username, password, userType).whenComplete((user, error) -> {
+            if (user != null) {
+                throttle.recordSuccess(username);
+            }
+        });
+    }
+
+    /**
+     * Cada entrada del lote pasa por el limitador como un login individual: consume un intento
+     * del bucket global y otro del de su usuario (un nombre repetido los consume otra vez), y las
+     * que se aciertan devuelven el del usuario. Las rechazadas quedan en null sin calcular su hash
+     * @param credentials lista de credenciales a verificar
+     * @param userType tipo de usuario ("admin" o "user")
+     * @return lista con el usuario autenticado o null para cada entrada
+     */
+    @Override
+    public List<User> authenticateAll(List<UserInterface.LoginCredentials> credentials, String userType) {
+        List<UserInterface.LoginCredentials> admitted = new ArrayList<>(credentials.size());
+        int[] positions = new int[credentials.size()];
+        for (int i = 0; i < credentials.size(); i++) {
+            UserInterface.LoginCredentials entry = credentials.get(i);
+            if (throttle.tryAcquire(entry == null ? null : entry.username)) {
+                positions[admitted.size()] = i;
+                admitted.add(entry);
+            }
+        }
+
+        List<User> results = new ArrayList<>(Collections.nCopies(credentials.size(), (User) null));
+        if (admitted.isEmpty()) {
+            return results;
+        }
+        List<User> verified = delegate.authenticateAll(admitted, userType);
+        for (int i = 0; i < verified.size(); i++) {
+            User user = verified.get(i);
+            if (user != null) {
+                throttle.recordSuccess(admitted.get(i).username);
+                results.set(positions[i], user);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public boolean changePassword(User user, String newPassword, String confirmPassword) {
+        return delegate.changePassword(user, newPassword, confirmPassword);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> changePasswordAsync(User user, String newPassword, String confirmPassword) {
+        return delegate.changePasswordAsync(user, newPassword, confirmPassword);
+    }
+
+    @Override
+    public String issueSession(User user) {
+        return delegate.issueSession(user);
+    }
+
+    @Override
+    public User validate(String token) {
+        return delegate.validate(token);
+    }
+
+    @Override
+    public void invalidate(String token) {
+        delegate.invalidate(token);
+    }
+
+    @Override
+    public void invalidateSessions(String username) {
+        delegate.invalidateSessions(username);
+    }
+
+    /**
+     * Obtiene el limitador para consultar sus contadores
+     * @return limitador de intentos
+     */
+    public LoginThrottle getThrottle() {
+        return throttle;
+    }
+}
@@ -2,33 +2,59 @@ import java.io.Serializable;
 
 class User implements Serializable {
     private static final long serialVersionUID = 1L;
-    
+
     private String username;
-    private String password;
+    // Hash con sal de la contraseña (los registros antiguos pueden contenerla aún en claro)
+    private volatile String password;
     private boolean passwordResetPending;
+    // Contraseña generada en claro, solo en memoria, para mostrarla al crear la cuenta
+    private transient String provisionalPassword;
     
     public User(String username, String password) {
         this.username = username;
-        this.password = password;
+        this.password = PasswordHasher.getDefault().hash(password);
+        this.provisionalPassword = password;
         this.passwordResetPending = true;
     }
     
+    // Constructor de restauración desde almacenamiento: recibe el hash ya calculado y no vuelve a calcularlo
+    User(String username, String passwordHash, boolean passwordResetPending) {
+        this.username = username;
+        this.password = passwordHash;
+        this.passwordResetPending = passwordResetPending;
+    }
+    
     public String getUsername() {
         return username;
     }
     
     public boolean authenticate(String password) {
-        return this.password.equals(password);
+        PasswordHasher hasher = PasswordHasher.getDefault();
+        String stored = this.password;
+        if (!hasher.verify(password, stored)) {
+            return false;
+        }
+
+        // Migrar de forma transparente registros en claro o con un coste inferior al actual
+        if (hasher.needsRehash(stored)) {
+            this.password = hasher.hash(password);
+        }
+        return true;
     }
 
     public void setPassword(String password) {
-        this.password = password;
+        this.password = PasswordHasher.getDefault().hash(password);
+        this.provisionalPassword = null;
     }
     
     public String getPassword() {
         return password;
     }
     
+    public String getProvisionalPassword() {
+        return provisionalPassword;
+    }
+    
     public boolean isPasswordResetPending() {
         return passwordResetPending;
     }
@@ -1,19 +1,20 @@
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Servicio para gestión de usuarios regulares
  * Maneja la creación, eliminación y consulta de usuarios en el sistema
  */
 public class UserManagementService {
-    private final List<User> users;
+    private final AccountStore<User> users;
     private final CredentialGenerator credentialGenerator;
 
     /**
      * Constructor del servicio de gestión de usuarios
-     * @param users lista de usuarios del sistema
+     * @param users almacén de usuarios compartido con el servicio de autenticación
      * @param credentialGenerator generador de credenciales automáticas
      */
-    public UserManagementService(List<User> users, CredentialGenerator credentialGenerator) {
+    public UserManagementService(AccountStore<User> users, CredentialGenerator credentialGenerator) {
         this.users = users;
         this.credentialGenerator = credentialGenerator;
     }
@@ -24,14 +25,18 @@ public class UserManagementService {
      * @return el nuevo usuario creado
      */
     public User createUser() {
-        String username = credentialGenerator.generateUsername();
-        String password = credentialGenerator.generatePassword();
-        
-        User newUser = new User(username, password);
-        newUser.setPasswordResetPending(true); // Forzar cambio de contraseña en primer login
-        users.add(newUser);
-        
-        return newUser;
+        // Si el nombre generado ya existe (otra alta concurrente o una cuenta anterior al contador),
+        // se genera el siguiente
+        while (true) {
+            String username = credentialGenerator.generateUsername();
+            String password = credentialGenerator.generatePassword();
+
+            User newUser = new User(username, password);
+            newUser.setPasswordResetPending(true); // Forzar cambio de contraseña en primer login
+            if (users.add(newUser)) {
+                return newUser;
+            }
+        }
     }
 
     /**
@@ -40,7 +45,7 @@ public class UserManagementService {
      * @return true si se eliminó correctamente, false si no se encontró
      */
     public boolean removeUser(String username) {
-        return users.removeIf(user -> user.getUsername().equals(username));
+        return users.remove(username) != null;
     }
 
     /**
@@ -48,15 +53,19 @@ public class UserManagementService {
      * @return true si hay al menos un usuario, false si no hay usuarios
      */
     public boolean hasUsers() {
-        return !users.isEmpty();
+        try (Stream<User> accounts = users.stream()) {
+            return accounts.findAny().isPresent();
+        }
     }
 
     /**
-     * Obtiene un array con todos los nombres de usuario del sistema
+     * Obtiene los nombres de usuario de una página, en orden de alta, sin cargar el resto
+     * @param offset posición (desde 0) del primer usuario de la página
+     * @param limit número máximo de nombres de la página
      * @return array de strings con los nombres de usuario
      */
-    public String[] getUsernames() {
-        return users.stream()
+    public String[] getUsernames(int offset, int limit) {
+        return users.page(offset, limit).stream()
                 .map(User::getUsername)
                 .toArray(String[]::new);
     }
@@ -67,21 +76,48 @@ public class UserManagementService {
      * @return string formateado con la información de todos los usuarios
      */
     public String getUserListString() {
+        List<User> users = this.users.snapshot();
         if (users.isEmpty()) {
             return "No users registered in the system.";
         }
 
         StringBuilder sb = new StringBuilder("=== Registered Users ===\n");
+        appendUsers(sb, users, 0);
+        sb.append("Total users: ").append(users.size());
+        
+        return sb.toString();
+    }
+
+    /**
+     * Genera la lista de una página de usuarios sin cargar el resto
+     * @param offset posición (desde 0) del primer usuario de la página
+     * @param limit número máximo de usuarios de la página
+     * @param total número total de usuarios (ver getUserCount), para no recalcularlo en cada página
+     * @return string formateado con los usuarios de la página y su posición en el total
+     */
+    public String getUserListString(int offset, int limit, int total) {
+        if (total == 0) {
+            return "No users registered in the system.";
+        }
+        List<User> page = users.page(offset, limit);
+        if (page.isEmpty()) {
+            return "No users in this page (total users: " + total + ").";
+        }
+
+        StringBuilder sb = new StringBuilder("=== Registered Users ===\n");
+        appendUsers(sb, page, offset);
+        sb.append(String.format("Showing %d-%d of %d users", offset + 1, offset + page.size(), total));
+        return sb.toString();
+    }
+
+    private static void appendUsers(StringBuilder sb, List<User> users, int firstPosition) {
         for (int i = 0; i < users.size(); i++) {
             User user = users.get(i);
             sb.append(String.format("%d. Username: %s | Password Reset Pending: %s\n", 
-                    i + 1, 
+                    firstPosition + i + 1, 
                     user.getUsername(), 
                     user.isPasswordResetPending() ? "Yes" : "No"));
         }
-        sb.append("Total users: ").append(users.size());
-        
-        return sb.toString();
     }
 
     /**
@@ -90,10 +126,7 @@ public class UserManagementService {
      * @return el usuario encontrado o null si no existe
      */
     public User findUserByUsername(String username) {
-        return users.stream()
-                .filter(user -> user.getUsername().equals(username))
-                .findFirst()
-                .orElse(null);
+        return users.get(username);
     }
 
     /**
@@ -110,7 +143,6 @@ public class UserManagementService {
      * @return true si el usuario ya existe, false en caso contrario
      */
     public boolean userExists(String username) {
-        return users.stream()
-                .anyMatch(user -> user.getUsername().equals(username));
+        return users.contains(username);
     }
 }
\ No newline at end of file
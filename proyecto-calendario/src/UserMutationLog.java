@@ -0,0 +1,261 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Registro de mutaciones de cuentas de solo escritura al final (write-ahead log)
+ * Cada mutación se añade como un registro [longitud][CRC32][contenido], de modo que escribir
+ * cuesta lo mismo con diez cuentas que con un millón; al leer, un registro incompleto o con
+ * CRC incorrecto al final del archivo (escritura cortada por un fallo) se descarta
+ */
+class UserMutationLog implements Closeable {
+    // Cabecera del archivo: "UWL" + versión del formato
+    private static final int MAGIC = 0x55574C01;
+    private static final int HEADER_BYTES = Integer.BYTES;
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+    // Un registro nunca ocupa más de esto; una longitud mayor indica un archivo dañado
+    private static final int MAX_RECORD_BYTES = 64 * 1024;
+
+    /**
+     * Cuándo se fuerza el registro al disco
+     * ALWAYS tras cada mutación, INTERVAL periódicamente desde un hilo de mantenimiento,
+     * NEVER lo deja al sistema operativo
+     */
+    enum FsyncPolicy { ALWAYS, INTERVAL, NEVER }
+
+    private final Path path;
+    private final FsyncPolicy fsyncPolicy;
+    private FileChannel channel;
+    private boolean dirty;
+
+    /**
+     * Abre el registro para añadir mutaciones, creándolo si no existe
+     * Si el final del archivo contiene un registro incompleto se trunca en el último registro válido
+     * @param path ruta del archivo del registro
+     * @param fsyncPolicy política de sincronización con el disco
+     * @throws IOException si no se puede abrir o crear el archivo
+     */
+    public UserMutationLog(Path path, FsyncPolicy fsyncPolicy) throws IOException {
+        this.path = path;
+        this.fsyncPolicy = fsyncPolicy;
+        open();
+    }
+
+    /**
+     * Lee un registro y entrega sus mutaciones válidas en orden
+     * @param path ruta del archivo del registro
+     * @param consumer receptor de cada mutación
+     * @return longitud en bytes de la parte válida del archivo (0 si no existe)
+     * @throws IOException si el archivo no se puede leer o no es un registro de mutaciones
+     */
+    public static long replay(Path path, Consumer<UserRepository.Mutation> consumer) throws IOException {
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            return 0;
+        }
+
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 64 * 1024))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a user mutation log: " + path);
+            }
+            long validLength = HEADER_BYTES;
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] payload;
+                int expectedCrc;
+                try {
+                    int length = in.readInt();
+                    expectedCrc = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_BYTES) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != expectedCrc) {
+                    break;
+                }
+                consumer.accept(decode(payload));
+                validLength += RECORD_HEADER_BYTES + payload.length;
+            }
+            return validLength;
+        } catch (EOFException e) {
+            // Ni siquiera la cabecera está completa
+            return 0;
+        }
+    }
+
+    /**
+     * Añade una mutación al final del registro
+     * @param mutation mutación a registrar
+     * @throws IOException si la escritura falla
+     */
+    public synchronized void append(UserRepository.Mutation mutation) throws IOException {
+        appendAll(List.of(mutation));
+    }
+
+    /**
+     * Añade varias mutaciones con una sola escritura (y una sola sincronización con ALWAYS)
+     * @param mutations mutaciones a registrar, en orden
+     * @throws IOException si la escritura falla
+     */
+    public synchronized void appendAll(List<UserRepository.Mutation> mutations) throws IOException {
+        if (mutations.isEmpty()) {
+            return;
+        }
+        List<byte[]> payloads = new ArrayList<>(mutations.size());
+        int total = 0;
+        for (UserRepository.Mutation mutation : mutations) {
+            byte[] payload = encode(mutation);
+            payloads.add(payload);
+            total += RECORD_HEADER_BYTES + payload.length;
+        }
+
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        for (byte[] payload : payloads) {
+            crc.reset();
+            crc.update(payload);
+            buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            channel.force(false);
+        } else {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Fuerza al disco las mutaciones escritas desde la última sincronización
+     * Lo llama periódicamente el hilo de mantenimiento con la política INTERVAL
+     * @throws IOException si la sincronización falla
+     */
+    public synchronized void forceIfDirty() throws IOException {
+        if (dirty) {
+            channel.force(false);
+            dirty = false;
+        }
+    }
+
+    /**
+     * Obtiene el tamaño actual del registro
+     * @return tamaño en bytes, incluida la cabecera
+     * @throws IOException si no se puede consultar el archivo
+     */
+    public synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Indica si el registro no contiene ninguna mutación
+     * @return true si solo tiene la cabecera
+     * @throws IOException si no se puede consultar el archivo
+     */
+    public synchronized boolean isEmpty() throws IOException {
+        return channel.size() <= HEADER_BYTES;
+    }
+
+    /**
+     * Aparta el registro actual con otro nombre para compactarlo y empieza uno vacío
+     * Las mutaciones que lleguen durante la compactación van al registro nuevo
+     * @param target ruta a la que mover el registro actual
+     * @throws IOException si no se puede mover o crear el archivo
+     */
+    public synchronized void rotateTo(Path target) throws IOException {
+        channel.force(false);
+        channel.close();
+        Files.move(path, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open();
+    }
+
+    /**
+     * Vacía el registro después de que un snapshot completo haya incorporado sus mutaciones
+     * @throws IOException si no se puede truncar el archivo
+     */
+    public synchronized void reset() throws IOException {
+        channel.truncate(HEADER_BYTES);
+        channel.position(HEADER_BYTES);
+        channel.force(false);
+        dirty = false;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    private void open() throws IOException {
+        long validLength = replay(path, mutation -> { });
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (validLength < HEADER_BYTES) {
+            // Archivo nuevo (o sin cabecera completa): escribir la cabecera
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC);
+            header.flip();
+            channel.write(header, 0);
+            channel.force(false);
+            validLength = HEADER_BYTES;
+        } else if (channel.size() > validLength) {
+            // Descartar la cola de una escritura cortada
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+        dirty = false;
+    }
+
+    private static byte[] encode(UserRepository.Mutation mutation) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(mutation.type.ordinal());
+            out.writeBoolean(mutation.admin);
+            out.writeUTF(mutation.username == null ? "" : mutation.username);
+            out.writeUTF(mutation.passwordHash == null ? "" : mutation.passwordHash);
+            out.writeBoolean(mutation.passwordResetPending);
+            out.writeInt(mutation.userCounter);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static UserRepository.Mutation decode(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            UserRepository.Mutation.Type type = UserRepository.Mutation.Type.values()[in.readUnsignedByte()];
+            boolean admin = in.readBoolean();
+            String username = in.readUTF();
+            String passwordHash = in.readUTF();
+            boolean passwordResetPending = in.readBoolean();
+            int userCounter = in.readInt();
+            return new UserRepository.Mutation(type, username.isEmpty() ? null : username, admin,
+                    passwordHash.isEmpty() ? null : passwordHash, passwordResetPending, userCounter);
+        }
+    }
+}
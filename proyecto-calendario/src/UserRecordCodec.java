@@ -0,0 +1,189 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Formato binario compacto y versionado para las cuentas de usuarios y administradores
+ * No depende del nombre de las clases (a diferencia de ObjectOutputStream), por lo que el
+ * módulo UserAuth (auth.User) comparte la estructura, pero no el significado de la contraseña:
+ * aquí es un hash PBKDF2 y en auth.Controller el texto plano. Los registros con hash llevan el
+ * bit 2 y el módulo UserAuth rechaza los archivos que los contienen; este módulo lee los de texto
+ * plano y los migra a hash al autenticar
+ *
+ * Estructura (enteros big-endian):
+ *   cabecera  int magic "UAUR", byte versión, int contador de usuarios, int número de registros
+ *   registro  byte flags (bit 0 administrador, bit 1 cambio de contraseña pendiente,
+ *             bit 2 contraseña con hash), short + bytes UTF-8 del nombre,
+ *             short + bytes UTF-8 de la contraseña (hash o texto plano según el bit 2)
+ *   final     int CRC32 de todo lo anterior
+ */
+final class UserRecordCodec {
+    static final int MAGIC = 0x55415552;
+    static final byte VERSION = 1;
+
+    static final int FLAG_ADMIN = 1;
+    static final int FLAG_PASSWORD_RESET_PENDING = 1 << 1;
+    static final int FLAG_PASSWORD_HASHED = 1 << 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private UserRecordCodec() {
+    }
+
+    /**
+     * Escribe usuarios, administradores y contador en el formato binario
+     * @param data datos a escribir
+     * @param out flujo de destino (no se cierra)
+     * @throws IOException si la escritura falla
+     */
+    public static void write(UserRepository.UserData data, OutputStream out) throws IOException {
+        CRC32 crc = new CRC32();
+        DataOutputStream dataOut = new DataOutputStream(
+                new CheckedOutputStream(new BufferedOutputStream(out, BUFFER_SIZE), crc));
+
+        dataOut.writeInt(MAGIC);
+        dataOut.writeByte(VERSION);
+        dataOut.writeInt(data.userCounter);
+        dataOut.writeInt(data.users.size() + data.admins.size());
+        for (User user : data.users) {
+            writeRecord(dataOut, user, false);
+        }
+        for (Admin admin : data.admins) {
+            writeRecord(dataOut, admin, true);
+        }
+
+        // El CRC cubre todo lo escrito hasta aquí
+        dataOut.flush();
+        int checksum = (int) crc.getValue();
+        dataOut.writeInt(checksum);
+        dataOut.flush();
+    }
+
+    /**
+     * Lee datos escritos con write
+     * @param in flujo de origen (no se cierra)
+     * @return usuarios, administradores y contador leídos
+     * @throws IOException si el flujo no tiene el formato esperado, es de una versión posterior o está dañado
+     */
+    public static UserRepository.UserData read(InputStream in) throws IOException {
+        Reader reader = new Reader(in);
+        List<User> users = new ArrayList<>(reader.getRecordCount());
+        List<Admin> admins = new ArrayList<>();
+        User account;
+        while ((account = reader.next()) != null) {
+            if (account instanceof Admin) {
+                admins.add((Admin) account);
+            } else {
+                users.add(account);
+            }
+        }
+        return new UserRepository.UserData(users, admins, reader.getUserCounter());
+    }
+
+    /**
+     * Lector incremental: decodifica un registro cada vez, sin cargar el archivo entero
+     * El CRC se comprueba al leer el último registro
+     */
+    static final class Reader {
+        private final CRC32 crc = new CRC32();
+        private final DataInputStream in;
+        private final int userCounter;
+        private final int recordCount;
+        private final byte[] buffer = new byte[256];
+        private int position;
+
+        /**
+         * Lee y valida la cabecera
+         * @param in flujo de origen (no se cierra)
+         * @throws IOException si el flujo no tiene el formato esperado o es de una versión posterior
+         */
+        Reader(InputStream in) throws IOException {
+            this.in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(in, BUFFER_SIZE), crc));
+            if (this.in.readInt() != MAGIC) {
+                throw new IOException("Not a user data file");
+            }
+            int version = this.in.readUnsignedByte();
+            if (version > VERSION) {
+                throw new IOException("Unsupported user data version " + version);
+            }
+            this.userCounter = this.in.readInt();
+            this.recordCount = this.in.readInt();
+            if (recordCount < 0) {
+                throw new IOException("Corrupt user data: negative record count");
+            }
+        }
+
+        int getUserCounter() {
+            return userCounter;
+        }
+
+        /**
+         * Obtiene el número total de registros (usuarios y administradores)
+         * @return registros del archivo
+         */
+        int getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * Decodifica el siguiente registro
+         * @return la cuenta leída (Admin para los administradores) o null si no quedan registros
+         * @throws IOException si el flujo se corta o el CRC no coincide
+         */
+        User next() throws IOException {
+            if (position >= recordCount) {
+                // Al pasar el último registro se comprueba el CRC una sola vez
+                if (position++ == recordCount) {
+                    int expected = (int) crc.getValue();
+                    if (in.readInt() != expected) {
+                        throw new IOException("Corrupt user data: checksum mismatch");
+                    }
+                }
+                return null;
+            }
+            position++;
+            int flags = in.readUnsignedByte();
+            String username = readString(in, buffer);
+            String passwordHash = readString(in, buffer);
+            boolean resetPending = (flags & FLAG_PASSWORD_RESET_PENDING) != 0;
+            return (flags & FLAG_ADMIN) != 0
+                    ? new Admin(username, passwordHash, resetPending)
+                    : new User(username, passwordHash, resetPending);
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, User account, boolean admin) throws IOException {
+        int flags = (admin ? FLAG_ADMIN : 0)
+                | (account.isPasswordResetPending() ? FLAG_PASSWORD_RESET_PENDING : 0)
+                | (PasswordHasher.isHashed(account.getPassword()) ? FLAG_PASSWORD_HASHED : 0);
+        out.writeByte(flags);
+        writeString(out, account.getUsername());
+        writeString(out, account.getPassword());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Field too long: " + bytes.length + " bytes");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, byte[] buffer) throws IOException {
+        int length = in.readUnsignedShort();
+        byte[] bytes = length <= buffer.length ? buffer : new byte[length];
+        in.readFully(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -1,6 +1,8 @@
 // Interface para repositorio de usuarios
 
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 interface UserRepository {
     // Método para guardar datos de usuarios, admins y contador
@@ -9,6 +11,79 @@ interface UserRepository {
     // Método para cargar datos desde el almacenamiento
     UserData load();
     
+    // Registra una sola mutación sin reescribir el estado completo
+    // Devuelve false si el repositorio no tiene registro incremental y hay que llamar a save
+    default boolean append(Mutation mutation) {
+        return false;
+    }
+    
+    // Indica si append registra las mutaciones sin reescribir el estado completo
+    default boolean supportsAppend() {
+        return false;
+    }
+    
+    // Registra varias mutaciones en orden, con una sola escritura si el repositorio lo permite
+    // Devuelve false si el repositorio no tiene registro incremental y hay que llamar a save
+    default boolean appendAll(List<Mutation> mutations) {
+        for (Mutation mutation : mutations) {
+            if (!append(mutation)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Recorre los usuarios regulares en orden de alta; las implementaciones con archivos los leen
+    // poco a poco en lugar de cargarlos todos. El stream debe cerrarse (try-with-resources)
+    default Stream<User> streamUsers() {
+        return load().users.stream();
+    }
+    
+    // Página de usuarios regulares en orden de alta
+    default List<User> page(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative");
+        }
+        try (Stream<User> users = streamUsers()) {
+            return users.skip(offset).limit(limit).collect(Collectors.toList());
+        }
+    }
+    
+    // Número de usuarios regulares, sin mantenerlos en memoria
+    default long count() {
+        try (Stream<User> users = streamUsers()) {
+            return users.count();
+        }
+    }
+    
+    // Acceso puntual a las cuentas sin cargarlas todas en memoria
+    // Devuelve null si el repositorio solo admite la carga completa con load
+    default AccountLookup lookup() {
+        return null;
+    }
+    
+    // Crea el repositorio indicado por -Duserauth.repository: file (por defecto), mapped o jdbc
+    static UserRepository fromSystemProperties() {
+        String type = System.getProperty("userauth.repository", "file");
+        switch (type) {
+            case "file":
+                return new FileUserRepository();
+            case "mapped":
+                return new MappedUserRepository();
+            case "jdbc":
+                return new JdbcUserRepository();
+            default:
+                throw new IllegalArgumentException("Unknown user repository: " + type);
+        }
+    }
+    
+    // Búsquedas puntuales que ofrecen los repositorios con índice en disco
+    interface AccountLookup {
+        User findUser(String username);     // null si no existe
+        List<Admin> loadAdmins();
+        int getUserCounter();
+    }
+    
     // Clase interna que encapsula los datos cargados
     class UserData {
         public List<User> users;        // Lista de usuarios regulares
@@ -21,4 +96,44 @@ interface UserRepository {
             this.userCounter = userCounter;
         }
     }
+    
+    // Mutación individual de las cuentas: alta, baja, cambio de contraseña o avance del contador
+    class Mutation {
+        public enum Type { CREATE, REMOVE, PASSWORD_CHANGE, COUNTER }
+        
+        public final Type type;
+        public final String username;               // null en las mutaciones del contador
+        public final boolean admin;                 // true si la cuenta es de administrador
+        public final String passwordHash;           // hash almacenado (solo CREATE y PASSWORD_CHANGE)
+        public final boolean passwordResetPending;
+        public final int userCounter;               // solo COUNTER
+        
+        public Mutation(Type type, String username, boolean admin, String passwordHash,
+                        boolean passwordResetPending, int userCounter) {
+            this.type = type;
+            this.username = username;
+            this.admin = admin;
+            this.passwordHash = passwordHash;
+            this.passwordResetPending = passwordResetPending;
+            this.userCounter = userCounter;
+        }
+        
+        public static Mutation create(User account) {
+            return new Mutation(Type.CREATE, account.getUsername(), account instanceof Admin,
+                    account.getPassword(), account.isPasswordResetPending(), 0);
+        }
+        
+        public static Mutation remove(String username, boolean admin) {
+            return new Mutation(Type.REMOVE, username, admin, null, false, 0);
+        }
+        
+        public static Mutation passwordChange(User account) {
+            return new Mutation(Type.PASSWORD_CHANGE, account.getUsername(), account instanceof Admin,
+                    account.getPassword(), account.isPasswordResetPending(), 0);
+        }
+        
+        public static Mutation counter(int userCounter) {
+            return new Mutation(Type.COUNTER, null, false, null, false, userCounter);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,447 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Snapshot de las cuentas en disco, en un único archivo o repartido en shards por nombre de usuario
+ *
+ * Con un shard se usa data/userdata.bin (el formato que también lee el módulo UserAuth).
+ * Con N shards cada cuenta va a data/users/shard-NN.bin según el hash de su nombre, y
+ * data/users/manifest guarda el número de shards y el contador de usuarios: al incorporar
+ * mutaciones solo se reescriben los shards que tocan, y un guardado completo compara cada shard
+ * con el archivo existente (por su CRC) y deja intactos los que no cambian. Los shards se leen
+ * en paralelo. Cambiar el número de shards requiere la herramienta ReshardTool, sin la aplicación
+ * en marcha
+ */
+final class UserSnapshotStore {
+    static final String SINGLE_FILE = "data/userdata.bin";
+    // Snapshot de versiones anteriores (serialización Java), solo se lee para migrarlo
+    static final String LEGACY_FILE = "data/userdata.ser";
+    static final String SHARD_DIRECTORY = "data/users";
+    private static final String MANIFEST = "manifest";
+    private static final int MAX_SHARDS = 1024;
+
+    private final int shardCount;
+    private final Path directory;
+
+    /**
+     * Constructor con la disposición por defecto en el directorio data
+     * @param shardCount número de shards (1 para el archivo único data/userdata.bin)
+     */
+    UserSnapshotStore(int shardCount) {
+        this(shardCount, Paths.get(SHARD_DIRECTORY));
+    }
+
+    /**
+     * Constructor con el directorio de los shards indicado (la herramienta de reparto escribe en uno aparte)
+     * @param shardCount número de shards (1 para el archivo único data/userdata.bin)
+     * @param directory directorio de los shards y su manifiesto
+     */
+    UserSnapshotStore(int shardCount, Path directory) {
+        if (shardCount < 1 || shardCount > MAX_SHARDS) {
+            throw new IllegalArgumentException("Shard count must be between 1 and " + MAX_SHARDS);
+        }
+        this.shardCount = shardCount;
+        this.directory = directory;
+    }
+
+    /**
+     * Número de shards con el que se escribieron los datos existentes
+     * @return shards del manifiesto, o 1 si los datos están en un único archivo (o no hay datos)
+     * @throws IOException si el manifiesto no se puede leer
+     */
+    static int existingShardCount() throws IOException {
+        Properties manifest = readManifest(Paths.get(SHARD_DIRECTORY));
+        return manifest == null ? 1 : Integer.parseInt(manifest.getProperty("shards"));
+    }
+
+    /**
+     * Indica si existe algún snapshot del repositorio de archivos (para migrarlo a otro repositorio)
+     * @return true si hay archivo único, shards o snapshot antiguo de serialización
+     */
+    static boolean hasData() {
+        return Files.exists(Paths.get(SINGLE_FILE)) || Files.exists(Paths.get(LEGACY_FILE))
+                || Files.exists(Paths.get(SHARD_DIRECTORY, MANIFEST));
+    }
+
+    int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Shard al que pertenece una cuenta; String.hashCode está definido por la especificación,
+     * así que el reparto es el mismo en cualquier JVM
+     * @param username nombre de la cuenta
+     * @param shardCount número de shards
+     * @return índice del shard
+     */
+    static int shardOf(String username, int shardCount) {
+        return Math.floorMod(username.hashCode(), shardCount);
+    }
+
+    /**
+     * Lee el snapshot completo
+     * Si está configurado con shards pero solo existe el archivo único (o el antiguo de serialización),
+     * lo lee para migrarlo: la siguiente escritura ya lo reparte
+     * @return usuarios, administradores y contador
+     * @throws IOException si algún archivo falta, está dañado o el número de shards no coincide
+     */
+    UserRepository.UserData read() throws IOException {
+        if (shardCount == 1) {
+            checkNotSharded();
+            return readSingle();
+        }
+        Properties manifest = readManifest(directory);
+        if (manifest == null) {
+            return readSingle();
+        }
+        checkShardCount(manifest);
+
+        List<UserRepository.UserData> shards = readShardsInParallel();
+        List<User> users = new ArrayList<>();
+        List<Admin> admins = new ArrayList<>();
+        for (UserRepository.UserData shard : shards) {
+            users.addAll(shard.users);
+            admins.addAll(shard.admins);
+        }
+        return new UserRepository.UserData(users, admins, Integer.parseInt(manifest.getProperty("userCounter")));
+    }
+
+    /**
+     * Escribe el snapshot completo; con shards solo se reescriben los que cambian
+     * @param data estado completo
+     * @throws IOException si la escritura falla
+     */
+    void write(UserRepository.UserData data) throws IOException {
+        if (shardCount == 1) {
+            Files.createDirectories(Paths.get(SINGLE_FILE).getParent());
+            byte[] encoded = encode(data);
+            writeAtomically(Paths.get(SINGLE_FILE), encoded);
+            return;
+        }
+
+        List<UserRepository.UserData> shards = partition(data);
+        Files.createDirectories(directory);
+        for (int shard = 0; shard < shardCount; shard++) {
+            byte[] encoded = encode(shards.get(shard));
+            Path path = shardPath(shard);
+            if (!sameContent(path, encoded)) {
+                writeAtomically(path, encoded);
+            }
+        }
+        writeManifest(data.userCounter);
+    }
+
+    /**
+     * Incorpora un lote de mutaciones leyendo y reescribiendo solo los shards afectados
+     * @param mutations mutaciones en orden
+     * @throws IOException si la lectura o la escritura falla
+     */
+    void apply(List<UserRepository.Mutation> mutations) throws IOException {
+        if (mutations.isEmpty()) {
+            return;
+        }
+        if (shardCount == 1 || readManifest(directory) == null) {
+            // Archivo único (o migración pendiente): se reconstruye completo
+            FileUserRepository.Replay replay = new FileUserRepository.Replay(read());
+            mutations.forEach(replay::apply);
+            write(replay.toUserData());
+            return;
+        }
+
+        Properties manifest = readManifest(directory);
+        checkShardCount(manifest);
+        int userCounter = Integer.parseInt(manifest.getProperty("userCounter"));
+        Map<Integer, List<UserRepository.Mutation>> byShard = new LinkedHashMap<>();
+        for (UserRepository.Mutation mutation : mutations) {
+            if (mutation.type == UserRepository.Mutation.Type.COUNTER) {
+                userCounter = Math.max(userCounter, mutation.userCounter);
+            } else {
+                byShard.computeIfAbsent(shardOf(mutation.username, shardCount), shard -> new ArrayList<>())
+                        .add(mutation);
+            }
+        }
+        for (Map.Entry<Integer, List<UserRepository.Mutation>> entry : byShard.entrySet()) {
+            FileUserRepository.Replay replay = new FileUserRepository.Replay(readShard(entry.getKey()));
+            entry.getValue().forEach(replay::apply);
+            writeAtomically(shardPath(entry.getKey()), encode(replay.toUserData()));
+        }
+        writeManifest(userCounter);
+    }
+
+    /**
+     * Abre un recorrido incremental de los usuarios regulares (sin administradores), shard a shard
+     * @return iterador que debe cerrarse para liberar el archivo abierto
+     * @throws IOException si no se puede abrir el primer archivo
+     */
+    UserIterator openUsers() throws IOException {
+        if (shardCount > 1 && readManifest(directory) != null) {
+            checkShardCount(readManifest(directory));
+            return new UserIterator(shardCount, this::shardPath);
+        }
+        if (shardCount == 1) {
+            checkNotSharded();
+        }
+        if (Files.exists(Paths.get(SINGLE_FILE))) {
+            return new UserIterator(1, shard -> Paths.get(SINGLE_FILE));
+        }
+        // Sin snapshot binario (vacío o aún en el formato antiguo): recorrer la carga completa
+        return new UserIterator(readSingle().users.iterator());
+    }
+
+    /**
+     * Iterador de usuarios regulares que lee los archivos de snapshot de uno en uno
+     */
+    static final class UserIterator implements Iterator<User>, Closeable {
+        private final int fileCount;
+        private final ShardPaths paths;
+        private Iterator<User> loaded;
+        private int nextFile;
+        private InputStream in;
+        private UserRecordCodec.Reader reader;
+        private User next;
+
+        UserIterator(int fileCount, ShardPaths paths) {
+            this.fileCount = fileCount;
+            this.paths = paths;
+        }
+
+        UserIterator(Iterator<User> loaded) {
+            this(0, null);
+            this.loaded = loaded;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (loaded != null) {
+                return loaded.hasNext();
+            }
+            try {
+                while (next == null) {
+                    if (reader == null) {
+                        if (nextFile >= fileCount) {
+                            return false;
+                        }
+                        in = Files.newInputStream(paths.get(nextFile++));
+                        reader = new UserRecordCodec.Reader(in);
+                    }
+                    User account = reader.next();
+                    if (account == null) {
+                        close();
+                    } else if (!(account instanceof Admin)) {
+                        next = account;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public User next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (loaded != null) {
+                return loaded.next();
+            }
+            User result = next;
+            next = null;
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader = null;
+            if (in != null) {
+                InputStream current = in;
+                in = null;
+                current.close();
+            }
+        }
+    }
+
+    /**
+     * Ruta del archivo de cada shard
+     */
+    interface ShardPaths {
+        Path get(int shard);
+    }
+
+    private Path shardPath(int shard) {
+        return directory.resolve(String.format("shard-%02d.bin", shard));
+    }
+
+    private void checkShardCount(Properties manifest) throws IOException {
+        int existing = Integer.parseInt(manifest.getProperty("shards"));
+        if (existing != shardCount) {
+            throw new IOException("User data has " + existing + " shards but " + shardCount
+                    + " are configured; run ReshardTool " + shardCount + " first");
+        }
+    }
+
+    private void checkNotSharded() throws IOException {
+        if (readManifest(directory) != null) {
+            throw new IOException("User data is sharded (" + SHARD_DIRECTORY
+                    + "); set -Duserauth.shards or run ReshardTool 1 first");
+        }
+    }
+
+    private List<UserRepository.UserData> readShardsInParallel() throws IOException {
+        int threads = Math.min(shardCount, Runtime.getRuntime().availableProcessors());
+        ExecutorService loaders = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "user-shard-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<UserRepository.UserData>> pending = new ArrayList<>(shardCount);
+            for (int shard = 0; shard < shardCount; shard++) {
+                int index = shard;
+                pending.add(loaders.submit(() -> readShard(index)));
+            }
+            List<UserRepository.UserData> shards = new ArrayList<>(shardCount);
+            for (Future<UserRepository.UserData> future : pending) {
+                shards.add(future.get());
+            }
+            return shards;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error loading shard: " + e.getCause(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading shards");
+        } finally {
+            loaders.shutdownNow();
+        }
+    }
+
+    private UserRepository.UserData readShard(int shard) throws IOException {
+        Path path = shardPath(shard);
+        try (InputStream in = Files.newInputStream(path)) {
+            return UserRecordCodec.read(in);
+        } catch (IOException e) {
+            throw new IOException(path + ": " + e.getMessage(), e);
+        }
+    }
+
+    private List<UserRepository.UserData> partition(UserRepository.UserData data) {
+        List<UserRepository.UserData> shards = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            shards.add(new UserRepository.UserData(new ArrayList<>(), new ArrayList<>(), 0));
+        }
+        for (User user : data.users) {
+            shards.get(shardOf(user.getUsername(), shardCount)).users.add(user);
+        }
+        for (Admin admin : data.admins) {
+            shards.get(shardOf(admin.getUsername(), shardCount)).admins.add(admin);
+        }
+        return shards;
+    }
+
+    /**
+     * Lee el archivo único o, si aún no existe, el snapshot antiguo de serialización Java
+     */
+    @SuppressWarnings("unchecked")
+    private static UserRepository.UserData readSingle() throws IOException {
+        Path snapshot = Paths.get(SINGLE_FILE);
+        if (Files.exists(snapshot)) {
+            try (InputStream in = Files.newInputStream(snapshot)) {
+                return UserRecordCodec.read(in);
+            }
+        }
+
+        Path legacy = Paths.get(LEGACY_FILE);
+        if (!Files.exists(legacy)) {
+            return new UserRepository.UserData(new ArrayList<>(), new ArrayList<>(), 1);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(legacy)))) {
+            List<User> users = (List<User>) in.readObject();
+            List<Admin> admins = (List<Admin>) in.readObject();
+            int userCounter = in.readInt();
+            return new UserRepository.UserData(users, admins, userCounter);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unreadable legacy user data: " + e.getMessage(), e);
+        }
+    }
+
+    private static byte[] encode(UserRepository.UserData data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 96 * (data.users.size() + data.admins.size()));
+        UserRecordCodec.write(data, bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Compara con el archivo existente byte a byte, para no reescribir los shards que no cambian
+     */
+    private static boolean sameContent(Path path, byte[] encoded) throws IOException {
+        if (!Files.exists(path) || Files.size(path) != encoded.length) {
+            return false;
+        }
+        return Arrays.equals(Files.readAllBytes(path), encoded);
+    }
+
+    /**
+     * Escribe en un archivo temporal y lo renombra, para no dejar nunca uno a medias
+     */
+    private static void writeAtomically(Path target, byte[] content) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            out.write(content);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeManifest(int userCounter) throws IOException {
+        Properties existing = readManifest(directory);
+        if (existing != null && existing.getProperty("shards").equals(String.valueOf(shardCount))
+                && existing.getProperty("userCounter").equals(String.valueOf(userCounter))) {
+            return;
+        }
+        Properties manifest = new Properties();
+        manifest.setProperty("shards", String.valueOf(shardCount));
+        manifest.setProperty("userCounter", String.valueOf(userCounter));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        manifest.store(bytes, "User data shards");
+        writeAtomically(directory.resolve(MANIFEST), bytes.toByteArray());
+    }
+
+    private static Properties readManifest(Path directory) throws IOException {
+        Path path = directory.resolve(MANIFEST);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        Properties manifest = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            manifest.load(in);
+        }
+        if (manifest.getProperty("shards") == null || manifest.getProperty("userCounter") == null) {
+            throw new IOException("Corrupt shard manifest: " + path);
+        }
+        return manifest;
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Filtro de Bloom de nombres de usuario conocidos
+ * Sirve como caché negativa: si el filtro dice que un nombre no existe, es seguro que no existe
+ * y la búsqueda completa se puede evitar; los falsos positivos solo cuestan esa búsqueda
+ * Las eliminaciones no se reflejan (el filtro se reconstruye al cargar el repositorio)
+ */
+class UsernameBloomFilter {
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final LongAdder insertions = new LongAdder();
+
+    /**
+     * Constructor que dimensiona el filtro para la capacidad y tasa de falsos positivos deseadas
+     * @param expectedInsertions número de nombres que se espera insertar
+     * @param falsePositiveRate tasa de falsos positivos objetivo (entre 0 y 1)
+     */
+    public UsernameBloomFilter(int expectedInsertions, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+        }
+        int expected = Math.max(1, expectedInsertions);
+        long optimalBits = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (LN2 * LN2));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) / 64));
+
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expected * LN2));
+    }
+
+    /**
+     * Registra un nombre de usuario en el filtro
+     * @param username nombre de usuario a registrar
+     */
+    public void add(String username) {
+        long hash = hash64(username);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            setBit(bit);
+        }
+        insertions.increment();
+    }
+
+    /**
+     * Consulta si un nombre de usuario puede existir
+     * @param username nombre de usuario a consultar
+     * @return false si el nombre seguro que no existe, true si puede existir
+     */
+    public boolean mightContain(String username) {
+        long hash = hash64(username);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Estima la tasa de falsos positivos actual según las inserciones realizadas
+     * @return tasa estimada de falsos positivos
+     */
+    public double estimatedFalsePositiveRate() {
+        double fillRatio = 1 - Math.exp(-(double) hashCount * insertions.sum() / bitCount);
+        return Math.pow(fillRatio, hashCount);
+    }
+
+    /**
+     * Obtiene la memoria ocupada por el array de bits
+     * @return tamaño en bytes del filtro
+     */
+    public long getMemoryFootprintBytes() {
+        return bitCount / 8;
+    }
+
+    /**
+     * Genera un resumen del tamaño y estado del filtro
+     * @return información de bits, funciones hash y tasa de falsos positivos
+     */
+    public String getStats() {
+        return String.format("%d bits (%.1f KB), %d hashes, %d names, est. false positive rate %.4f%%",
+                bitCount, getMemoryFootprintBytes() / 1024.0, hashCount, insertions.sum(),
+                estimatedFalsePositiveRate() * 100);
+    }
+
+    private void setBit(long bit) {
+        int word = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        long current;
+        do {
+            current = bits.get(word);
+            if ((current & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(word, current, current | mask));
+    }
+
+    /**
+     * Hash FNV-1a de 64 bits con mezcla final, del que se derivan las k funciones hash
+     */
+    private static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,55 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fábrica de ejecutores con un hilo por tarea
+ * En un JDK con hilos virtuales (21 o superior) usa Executors.newVirtualThreadPerTaskExecutor;
+ * en JDK anteriores recurre a un pool de hilos demonio que crece según la demanda
+ */
+final class VirtualThreadExecutors {
+
+    private VirtualThreadExecutors() {
+    }
+
+    /**
+     * Crea un ejecutor que ejecuta cada tarea en su propio hilo (virtual si el JDK lo permite)
+     * @param namePrefix prefijo del nombre de los hilos cuando no hay hilos virtuales
+     * @return ejecutor de un hilo por tarea
+     */
+    public static ExecutorService newPerTaskExecutor(String namePrefix) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return newPlatformExecutor(namePrefix);
+        } catch (InvocationTargetException e) {
+            // JDK 19/20 sin --enable-preview
+            return newPlatformExecutor(namePrefix);
+        }
+    }
+
+    /**
+     * Indica si el JDK actual dispone de hilos virtuales
+     * @return true si se pueden crear hilos virtuales
+     */
+    public static boolean isVirtualThreadAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static ExecutorService newPlatformExecutor(String namePrefix) {
+        AtomicInteger counter = new AtomicInteger(1);
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}